@@ -74,6 +74,11 @@ public class DragonMounts {
         proxy.onPostInit(event);
     }
     
+    @EventHandler
+    public void onIdMapping(FMLModIdMappingEvent evt) {
+        proxy.onIdMapping(evt);
+    }
+    
     @EventHandler
     public void onServerStarting(FMLServerStartingEvent evt) {
         proxy.onServerStarting(evt);
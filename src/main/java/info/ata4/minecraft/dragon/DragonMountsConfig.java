@@ -22,10 +22,12 @@ public class DragonMountsConfig {
     // config properties
     private boolean disableBlockOverride = false;
     private boolean debug = false;
+    private float homeUpdateDistance = 4;
     
     public DragonMountsConfig(Configuration config) {
         debug = config.getBoolean("debug", "client", debug, "Debug mode. Unless you're a developer or are told to activate it, you don't want to set this to true.");
         disableBlockOverride = config.getBoolean("disableBlockOverride", "client", debug, "Disables right-click override on the vanilla dragon egg block. May help to fix issues with other mods.");
+        homeUpdateDistance = config.getFloat("homeUpdateDistance", "server", homeUpdateDistance, 0, 64, "Distance in blocks the owner needs to move before the home position of tamed dragons is moved to the owner.");
         
         if (config.hasChanged()) {
             config.save();
@@ -45,4 +47,8 @@ public class DragonMountsConfig {
     public boolean isDisableBlockOverride() {
         return disableBlockOverride;
     }
+
+    public float getHomeUpdateDistance() {
+        return homeUpdateDistance;
+    }
 }
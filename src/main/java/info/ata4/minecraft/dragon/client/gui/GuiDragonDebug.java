@@ -185,6 +185,7 @@ public class GuiDragonDebug extends Gui implements PrivateAccessor {
         text.setColor(WHITE);
         
         text.println("Side: " + (dragon.isServer() ? "server" : "client"));
+        text.println("Tick level: " + dragon.getTickLevel().name().toLowerCase());
         
         text.println("ID: " + dragon.getEntityId());
         text.println("UUID: " + StringUtils.abbreviate(dragon.getUniqueID().toString(), 22));
@@ -290,10 +291,10 @@ public class GuiDragonDebug extends Gui implements PrivateAccessor {
         text.setColor(WHITE);
         
         DragonBreedHelper breedHelper = dragonServer.getBreedHelper();
-        breedHelper.getBreedPoints().forEach((breedType, points) -> {
+        for (EnumDragonBreed breedType : EnumDragonBreed.values()) {
             text.setColor(breedType.getBreed().getColor());
-            text.printf("%s: %d\n", breedType, points.get());
-        });
+            text.printf("%s: %d\n", breedType, breedHelper.getBreedPoints(breedType));
+        }
     }
 
     private void renderNavigation() {
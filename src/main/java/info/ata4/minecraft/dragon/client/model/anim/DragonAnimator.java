@@ -197,7 +197,7 @@ public class DragonAnimator extends DragonHelper {
      * Updates the animation state. Called on every tick.
      */
     @Override
-    public void onLivingUpdate() {
+    public void onLivingUpdate(int ticks) {
         if (!dragon.isEgg()) {
             setOnGround(!dragon.isFlying());
         }
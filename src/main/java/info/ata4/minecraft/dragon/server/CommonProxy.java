@@ -13,12 +13,16 @@ import info.ata4.minecraft.dragon.DragonMounts;
 import info.ata4.minecraft.dragon.server.block.BlockDragonBreedEgg;
 import info.ata4.minecraft.dragon.server.cmd.CommandDragon;
 import info.ata4.minecraft.dragon.server.entity.EntityTameableDragon;
+import info.ata4.minecraft.dragon.server.entity.breeds.DragonHabitatTable;
 import info.ata4.minecraft.dragon.server.handler.DragonEggBlockHandler;
+import info.ata4.minecraft.dragon.server.handler.DragonHatcheryHandler;
+import info.ata4.minecraft.dragon.server.handler.DragonRegistryHandler;
 import info.ata4.minecraft.dragon.server.item.ItemDragonBreedEgg;
 import net.minecraft.command.ServerCommandManager;
 import net.minecraft.server.MinecraftServer;
 import net.minecraftforge.common.MinecraftForge;
 import net.minecraftforge.fml.common.event.FMLInitializationEvent;
+import net.minecraftforge.fml.common.event.FMLModIdMappingEvent;
 import net.minecraftforge.fml.common.event.FMLPostInitializationEvent;
 import net.minecraftforge.fml.common.event.FMLPreInitializationEvent;
 import net.minecraftforge.fml.common.event.FMLServerStartingEvent;
@@ -46,9 +50,18 @@ public class CommonProxy {
         registerEntities();
 
         MinecraftForge.EVENT_BUS.register(new DragonEggBlockHandler());
+        MinecraftForge.EVENT_BUS.register(new DragonHatcheryHandler());
+        MinecraftForge.EVENT_BUS.register(new DragonRegistryHandler());
     }
 
     public void onPostInit(FMLPostInitializationEvent event) {
+        // all blocks are registered now
+        DragonHabitatTable.rebuild();
+    }
+    
+    public void onIdMapping(FMLModIdMappingEvent evt) {
+        // block IDs may have changed, rebuild on next lookup
+        DragonHabitatTable.invalidate();
     }
     
     public void onServerStarting(FMLServerStartingEvent evt) {
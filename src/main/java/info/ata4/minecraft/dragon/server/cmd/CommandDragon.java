@@ -32,6 +32,7 @@ public class CommandDragon extends CommandBaseNested implements IDragonModifier
         addCommand(new CommandDragonEnumSetter("stage", EnumDragonLifeStage.class, lifeStageConsumer));
         
         addCommand(new CommandDragonTame());
+        addCommand(new CommandDragonProfile());
 
         if (DragonMounts.instance.getConfig().isDebug()) {
             addCommand(new CommandDragonDebug());
@@ -0,0 +1,78 @@
+/*
+ ** 2016 September 05
+ **
+ ** The author disclaims copyright to this source code.  In place of
+ ** a legal notice, here is a blessing:
+ **    May you do good and not evil.
+ **    May you find forgiveness for yourself and forgive others.
+ **    May you share freely, never taking more than you give.
+ */
+package info.ata4.minecraft.dragon.server.cmd;
+
+import info.ata4.minecraft.dragon.server.util.DragonProfiler;
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.regex.Pattern;
+import net.minecraft.command.CommandException;
+
+/**
+ * Controls the dragon update profiler.
+ * 
+ * @author Nico Bergemann <barracuda415 at yahoo.de>
+ */
+public class CommandDragonProfile extends CommandBaseNested {
+    
+    // profiles are always written to this directory in the server directory
+    private static final String PROFILE_DIR = "dragon-profiles";
+    private static final String PROFILE_EXT = ".csv";
+    
+    // file names without any path elements
+    private static final Pattern PROFILE_NAME = Pattern.compile("[A-Za-z0-9_\\-]+");
+    
+    public CommandDragonProfile() {
+        addCommand(new CommandDragonLambda("start", (server, sender, args) -> {
+            DragonProfiler.start();
+            notifyCommandListener(sender, this, "commands.dragon.profile.started");
+        }));
+        
+        addCommand(new CommandDragonLambda("stop", (server, sender, args) -> {
+            DragonProfiler.stop();
+            notifyCommandListener(sender, this, "commands.dragon.profile.stopped");
+        }));
+        
+        addCommand(new CommandDragonLambda("dump", (server, sender, args) -> {
+            String fileName;
+            if (args.length > 0) {
+                fileName = args[0];
+                if (fileName.endsWith(PROFILE_EXT)) {
+                    fileName = fileName.substring(0, fileName.length() - PROFILE_EXT.length());
+                }
+                if (!PROFILE_NAME.matcher(fileName).matches()) {
+                    throw new CommandException("commands.dragon.profile.badname", args[0]);
+                }
+            } else {
+                fileName = "dragon_profile_" + new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date());
+            }
+            
+            File dir = server.getFile(PROFILE_DIR);
+            File file = new File(dir, fileName + PROFILE_EXT);
+            try {
+                if (!dir.isDirectory() && !dir.mkdirs()) {
+                    throw new IOException("Can't create directory " + dir);
+                }
+                DragonProfiler.dump(file);
+            } catch (IOException ex) {
+                throw new CommandException("commands.dragon.profile.failed", ex.getMessage());
+            }
+            
+            notifyCommandListener(sender, this, "commands.dragon.profile.dumped", file.getPath());
+        }));
+    }
+
+    @Override
+    public String getCommandName() {
+        return "profile";
+    }
+}
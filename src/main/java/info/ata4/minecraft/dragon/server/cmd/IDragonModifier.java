@@ -9,17 +9,14 @@
  */
 package info.ata4.minecraft.dragon.server.cmd;
 
+import info.ata4.minecraft.dragon.server.entity.DragonRegistry;
 import info.ata4.minecraft.dragon.server.entity.EntityTameableDragon;
-import java.util.List;
-import java.util.Optional;
 import java.util.function.Consumer;
-import java.util.stream.Collectors;
 import static net.minecraft.command.CommandBase.getCommandSenderAsPlayer;
 import net.minecraft.command.CommandException;
 import net.minecraft.command.ICommandSender;
 import net.minecraft.entity.player.EntityPlayerMP;
 import net.minecraft.server.MinecraftServer;
-import net.minecraft.util.math.AxisAlignedBB;
 import net.minecraft.world.WorldServer;
 
 /**
@@ -34,36 +31,27 @@ public interface IDragonModifier {
         if (sender instanceof EntityPlayerMP) {
             EntityPlayerMP player = getCommandSenderAsPlayer(sender);
             
-            AxisAlignedBB aabb = player.getEntityBoundingBox()
-                .expand(MODIFIER_RANGE, MODIFIER_RANGE, MODIFIER_RANGE);
-            
-            List<EntityTameableDragon> dragons = player.worldObj
-                .getEntitiesWithinAABB(EntityTameableDragon.class, aabb);
-
             // get closest dragon
-            Optional<EntityTameableDragon> closestDragon = dragons.stream()
-                .max((dragon1, dragon2) -> Float.compare(
-                    dragon1.getDistanceToEntity(player),
-                    dragon2.getDistanceToEntity(player))
-                );
+            DragonRegistry registry = DragonRegistry.get(player.worldObj);
+            EntityTameableDragon closestDragon = registry == null ? null
+                : registry.getClosestDragon(player, MODIFIER_RANGE);
 
-            if (!closestDragon.isPresent()) {
+            if (closestDragon == null) {
                 throw new CommandException("commands.dragon.nodragons");
             }
             
-            modifier.accept(closestDragon.get());
+            modifier.accept(closestDragon);
         } else {
-            // scan all entities on all dimensions
+            // apply to all dragons on all dimensions
             for (WorldServer worldServer : server.worldServers) {
-                // need a copy of all dragon entities before applying modifier,
-                // since it could delete from the server entity list during iteration
-                List<EntityTameableDragon> dragons = worldServer.loadedEntityList
-                    .stream()
-                    .filter(entity -> entity instanceof EntityTameableDragon)
-                    .map(entity -> (EntityTameableDragon) entity)
-                    .collect(Collectors.toList());
+                DragonRegistry registry = DragonRegistry.get(worldServer);
+                if (registry == null) {
+                    continue;
+                }
                 
-                dragons.forEach(modifier);
+                // the registry returns a copy, since the modifier could
+                // remove dragons from the world during iteration
+                registry.getDragons().forEach(modifier);
             }
         }
     }
@@ -0,0 +1,386 @@
+/*
+ ** 2016 September 07
+ **
+ ** The author disclaims copyright to this source code.  In place of
+ ** a legal notice, here is a blessing:
+ **    May you do good and not evil.
+ **    May you find forgiveness for yourself and forgive others.
+ **    May you share freely, never taking more than you give.
+ */
+package info.ata4.minecraft.dragon.server.entity;
+
+import info.ata4.minecraft.dragon.server.entity.breeds.EnumDragonBreed;
+import info.ata4.minecraft.dragon.server.entity.helper.EnumDragonLifeStage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.WeakHashMap;
+import java.util.function.Predicate;
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.player.EntityPlayer;
+import net.minecraft.util.SoundCategory;
+import net.minecraft.util.SoundEvent;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.IWorldEventListener;
+import net.minecraft.world.World;
+
+/**
+ * Index of all dragons that are currently loaded in a world. Dragons are added
+ * and removed by the world itself and indexed by chunk column, owner, breed
+ * and life stage, so commands and AI tasks don't need to scan the entity list.
+ *
+ * @author Nico Bergemann <barracuda415 at yahoo.de>
+ */
+public class DragonRegistry implements IWorldEventListener {
+
+    private static final Map<World, DragonRegistry> REGISTRIES = new WeakHashMap<>();
+
+    /**
+     * Returns the registry for a server world, creating and attaching it if
+     * required. Should be called before any entities are loaded.
+     *
+     * @param world server world
+     * @return dragon registry
+     */
+    public static DragonRegistry forWorld(World world) {
+        DragonRegistry registry = REGISTRIES.get(world);
+        if (registry == null) {
+            registry = new DragonRegistry();
+            world.addEventListener(registry);
+            REGISTRIES.put(world, registry);
+        }
+        return registry;
+    }
+
+    /**
+     * Returns the registry for a world.
+     *
+     * @param world world
+     * @return dragon registry or null if the world has none
+     */
+    public static DragonRegistry get(World world) {
+        return REGISTRIES.get(world);
+    }
+
+    public static void remove(World world) {
+        REGISTRIES.remove(world);
+    }
+
+    private static long cellKey(int cellX, int cellZ) {
+        return ((long) cellX << 32) | (cellZ & 0xFFFFFFFFL);
+    }
+
+    private static long cellKey(double x, double z) {
+        return cellKey((int) Math.floor(x) >> 4, (int) Math.floor(z) >> 4);
+    }
+
+    private static <K> void addTo(Map<K, List<EntityTameableDragon>> index,
+            K key, EntityTameableDragon dragon) {
+        index.computeIfAbsent(key, k -> new ArrayList<>()).add(dragon);
+    }
+
+    private static <K> void removeFrom(Map<K, List<EntityTameableDragon>> index,
+            K key, EntityTameableDragon dragon) {
+        List<EntityTameableDragon> dragons = index.get(key);
+        if (dragons != null) {
+            dragons.remove(dragon);
+            if (dragons.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+
+    private static List<EntityTameableDragon> copyOf(List<EntityTameableDragon> dragons) {
+        return dragons == null ? Collections.emptyList() : new ArrayList<>(dragons);
+    }
+
+    private final Map<EntityTameableDragon, Entry> entries = new IdentityHashMap<>();
+    private final Map<Long, List<EntityTameableDragon>> byCell = new HashMap<>();
+    private final Map<UUID, List<EntityTameableDragon>> byOwner = new HashMap<>();
+    private final Map<EnumDragonBreed, List<EntityTameableDragon>> byBreed = new EnumMap<>(EnumDragonBreed.class);
+    private final Map<EnumDragonLifeStage, List<EntityTameableDragon>> byLifeStage = new EnumMap<>(EnumDragonLifeStage.class);
+
+    private DragonRegistry() {
+    }
+
+    private void add(EntityTameableDragon dragon) {
+        if (entries.containsKey(dragon)) {
+            return;
+        }
+
+        Entry entry = new Entry(dragon);
+        entries.put(dragon, entry);
+
+        addTo(byCell, entry.cell, dragon);
+        addTo(byBreed, entry.breed, dragon);
+        addTo(byLifeStage, entry.lifeStage, dragon);
+        if (entry.owner != null) {
+            addTo(byOwner, entry.owner, dragon);
+        }
+
+        dragon.registryEntry = entry;
+    }
+
+    private void remove(EntityTameableDragon dragon) {
+        Entry entry = entries.remove(dragon);
+        if (entry == null) {
+            return;
+        }
+
+        removeFrom(byCell, entry.cell, dragon);
+        removeFrom(byBreed, entry.breed, dragon);
+        removeFrom(byLifeStage, entry.lifeStage, dragon);
+        if (entry.owner != null) {
+            removeFrom(byOwner, entry.owner, dragon);
+        }
+
+        if (dragon.registryEntry == entry) {
+            dragon.registryEntry = null;
+        }
+    }
+
+    /**
+     * Returns the number of loaded dragons.
+     *
+     * @return number of dragons
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns a copy of all loaded dragons, which is safe to iterate while
+     * dragons are being spawned or removed.
+     *
+     * @return list of dragons
+     */
+    public List<EntityTameableDragon> getDragons() {
+        return new ArrayList<>(entries.keySet());
+    }
+
+    public List<EntityTameableDragon> getDragonsByOwner(UUID owner) {
+        return copyOf(byOwner.get(owner));
+    }
+
+    public List<EntityTameableDragon> getDragonsByBreed(EnumDragonBreed breed) {
+        return copyOf(byBreed.get(breed));
+    }
+
+    public List<EntityTameableDragon> getDragonsByLifeStage(EnumDragonLifeStage lifeStage) {
+        return copyOf(byLifeStage.get(lifeStage));
+    }
+
+    /**
+     * Returns all dragons within a radius around a position.
+     *
+     * @param x center X
+     * @param y center Y
+     * @param z center Z
+     * @param radius search radius
+     * @return list of dragons within the radius
+     */
+    public List<EntityTameableDragon> getDragonsInRange(double x, double y, double z, double radius) {
+        List<EntityTameableDragon> result = new ArrayList<>();
+        forEachInRange(x, y, z, radius, dragon -> {
+            result.add(dragon);
+            return false;
+        });
+        return result;
+    }
+
+    /**
+     * Returns the first dragon within a radius around an entity that matches
+     * the filter. The entity itself is never returned.
+     *
+     * @param center center entity
+     * @param radius search radius
+     * @param filter dragon filter
+     * @return matching dragon or null if there is none
+     */
+    public EntityTameableDragon findDragonInRange(Entity center, double radius,
+            Predicate<EntityTameableDragon> filter) {
+        EntityTameableDragon[] found = new EntityTameableDragon[1];
+        forEachInRange(center.posX, center.posY, center.posZ, radius, dragon -> {
+            if (dragon != center && filter.test(dragon)) {
+                found[0] = dragon;
+                return true;
+            }
+            return false;
+        });
+        return found[0];
+    }
+
+    /**
+     * Returns the closest dragon within a radius around an entity. The entity
+     * itself is never returned.
+     *
+     * @param center center entity
+     * @param radius search radius
+     * @return closest dragon or null if there is none
+     */
+    public EntityTameableDragon getClosestDragon(Entity center, double radius) {
+        EntityTameableDragon closest = null;
+        double closestDistSq = Double.MAX_VALUE;
+
+        for (EntityTameableDragon dragon : getDragonsInRange(center.posX,
+                center.posY, center.posZ, radius)) {
+            if (dragon == center) {
+                continue;
+            }
+
+            double distSq = dragon.getDistanceSqToEntity(center);
+            if (distSq < closestDistSq) {
+                closest = dragon;
+                closestDistSq = distSq;
+            }
+        }
+
+        return closest;
+    }
+
+    /**
+     * Passes all dragons within the radius to the visitor until it returns
+     * true.
+     */
+    private void forEachInRange(double x, double y, double z, double radius,
+            Predicate<EntityTameableDragon> visitor) {
+        double radiusSq = radius * radius;
+        int minCellX = (int) Math.floor(x - radius) >> 4;
+        int maxCellX = (int) Math.floor(x + radius) >> 4;
+        int minCellZ = (int) Math.floor(z - radius) >> 4;
+        int maxCellZ = (int) Math.floor(z + radius) >> 4;
+
+        for (int cx = minCellX; cx <= maxCellX; cx++) {
+            for (int cz = minCellZ; cz <= maxCellZ; cz++) {
+                List<EntityTameableDragon> dragons = byCell.get(cellKey(cx, cz));
+                if (dragons == null) {
+                    continue;
+                }
+
+                // iterate by index, the visitor may not modify the registry
+                for (int i = 0; i < dragons.size(); i++) {
+                    EntityTameableDragon dragon = dragons.get(i);
+                    if (dragon.getDistanceSq(x, y, z) <= radiusSq && visitor.test(dragon)) {
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void onEntityAdded(Entity entityIn) {
+        if (entityIn instanceof EntityTameableDragon) {
+            add((EntityTameableDragon) entityIn);
+        }
+    }
+
+    @Override
+    public void onEntityRemoved(Entity entityIn) {
+        // also called on chunk unloads
+        if (entityIn instanceof EntityTameableDragon) {
+            remove((EntityTameableDragon) entityIn);
+        }
+    }
+
+    @Override
+    public void notifyBlockUpdate(World worldIn, BlockPos pos, IBlockState oldState, IBlockState newState, int flags) {
+    }
+
+    @Override
+    public void notifyLightSet(BlockPos pos) {
+    }
+
+    @Override
+    public void markBlockRangeForRenderUpdate(int x1, int y1, int z1, int x2, int y2, int z2) {
+    }
+
+    @Override
+    public void playSoundToAllNearExcept(EntityPlayer player, SoundEvent soundIn, SoundCategory category, double x, double y, double z, float volume, float pitch) {
+    }
+
+    @Override
+    public void playRecord(SoundEvent soundIn, BlockPos pos) {
+    }
+
+    @Override
+    public void spawnParticle(int particleID, boolean ignoreRange, double xCoord, double yCoord, double zCoord, double xSpeed, double ySpeed, double zSpeed, int... parameters) {
+    }
+
+    @Override
+    public void broadcastSound(int soundID, BlockPos pos, int data) {
+    }
+
+    @Override
+    public void playEvent(EntityPlayer player, int type, BlockPos blockPosIn, int data) {
+    }
+
+    @Override
+    public void sendBlockBreakProgress(int breakerId, BlockPos pos, int progress) {
+    }
+
+    /**
+     * Index keys of a registered dragon, updated by the dragon on each tick.
+     */
+    class Entry {
+
+        private final EntityTameableDragon dragon;
+        private long cell;
+        private UUID owner;
+        private EnumDragonBreed breed;
+        private EnumDragonLifeStage lifeStage;
+
+        private Entry(EntityTameableDragon dragon) {
+            this.dragon = dragon;
+            this.cell = cellKey(dragon.posX, dragon.posZ);
+            this.owner = dragon.getOwnerId();
+            this.breed = dragon.getBreedType();
+            this.lifeStage = dragon.getLifeStageHelper().getLifeStage();
+        }
+
+        /**
+         * Moves the dragon to other index buckets if its position, owner,
+         * breed or life stage has changed.
+         */
+        void update() {
+            long newCell = cellKey(dragon.posX, dragon.posZ);
+            if (newCell != cell) {
+                removeFrom(byCell, cell, dragon);
+                addTo(byCell, newCell, dragon);
+                cell = newCell;
+            }
+
+            UUID newOwner = dragon.getOwnerId();
+            if (!Objects.equals(newOwner, owner)) {
+                if (owner != null) {
+                    removeFrom(byOwner, owner, dragon);
+                }
+                if (newOwner != null) {
+                    addTo(byOwner, newOwner, dragon);
+                }
+                owner = newOwner;
+            }
+
+            EnumDragonBreed newBreed = dragon.getBreedType();
+            if (newBreed != breed) {
+                removeFrom(byBreed, breed, dragon);
+                addTo(byBreed, newBreed, dragon);
+                breed = newBreed;
+            }
+
+            EnumDragonLifeStage newLifeStage = dragon.getLifeStageHelper().getLifeStage();
+            if (newLifeStage != lifeStage) {
+                removeFrom(byLifeStage, lifeStage, dragon);
+                addTo(byLifeStage, newLifeStage, dragon);
+                lifeStage = newLifeStage;
+            }
+        }
+    }
+}
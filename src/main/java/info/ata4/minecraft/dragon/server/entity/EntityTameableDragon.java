@@ -12,16 +12,19 @@ package info.ata4.minecraft.dragon.server.entity;
 import com.google.common.base.Optional;
 import info.ata4.minecraft.dragon.client.model.anim.DragonAnimator;
 import info.ata4.minecraft.dragon.server.entity.ai.path.PathNavigateFlying;
+import info.ata4.minecraft.dragon.server.entity.ai.path.PathNavigateWalking;
 import info.ata4.minecraft.dragon.server.entity.breeds.DragonBreed;
 import info.ata4.minecraft.dragon.server.entity.breeds.EnumDragonBreed;
 import info.ata4.minecraft.dragon.server.entity.helper.*;
-import java.util.HashMap;
+import info.ata4.minecraft.dragon.server.util.DragonFlightRecorder;
+import info.ata4.minecraft.dragon.server.util.DragonProfiler;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import java.util.UUID;
 import net.minecraft.block.Block;
 import net.minecraft.entity.Entity;
 import net.minecraft.entity.EntityAgeable;
+import net.minecraft.entity.EntityLivingBase;
 import net.minecraft.entity.EntityList;
 import net.minecraft.entity.EnumCreatureAttribute;
 import static net.minecraft.entity.SharedMonsterAttributes.*;
@@ -38,14 +41,16 @@ import net.minecraft.network.datasync.DataParameter;
 import net.minecraft.network.datasync.DataSerializers;
 import net.minecraft.network.datasync.EntityDataManager;
 import net.minecraft.network.play.server.SPacketAnimation;
-import net.minecraft.pathfinding.PathNavigateGround;
+import net.minecraft.pathfinding.PathNavigate;
 import net.minecraft.util.DamageSource;
 import net.minecraft.util.EnumHand;
 import net.minecraft.util.SoundEvent;
 import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.MathHelper;
 import net.minecraft.util.text.translation.I18n;
 import net.minecraft.world.World;
 import net.minecraft.world.WorldServer;
+import net.minecraft.world.chunk.Chunk;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -75,6 +80,9 @@ public class EntityTameableDragon extends EntityTameable {
     public static final double BASE_FOLLOW_RANGE_FLYING = BASE_FOLLOW_RANGE * 2;
     public static final int HOME_RADIUS = 64;
     public static final double ALTITUDE_FLYING_THRESHOLD = 2;
+    public static final double ALTITUDE_LANDING_THRESHOLD = 1;
+    public static final int FLYING_MODE_MIN_TICKS = 20;
+    public static final int TICK_LEVEL_UPDATE_INTERVAL = 20;
 
     // data value IDs
     private static final DataParameter<Boolean> DATA_FLYING =
@@ -83,21 +91,51 @@ public class EntityTameableDragon extends EntityTameable {
             EntityDataManager.<Boolean>createKey(EntityTameableDragon.class, DataSerializers.BOOLEAN);
     private static final DataParameter<Optional<UUID>> DATA_BREEDER =
             EntityDataManager.<Optional<UUID>>createKey(EntityTameableDragon.class, DataSerializers.OPTIONAL_UNIQUE_ID);
-    private static final DataParameter<String> DATA_BREED =
-            EntityDataManager.<String>createKey(EntityTameableDragon.class, DataSerializers.STRING);
+    private static final DataParameter<Integer> DATA_BREED =
+            EntityDataManager.<Integer>createKey(EntityTameableDragon.class, DataSerializers.VARINT);
     private static final DataParameter<Integer> DATA_REPRO_COUNT =
             EntityDataManager.<Integer>createKey(EntityTameableDragon.class, DataSerializers.VARINT);
-    private static final DataParameter<Integer> DATA_TICKS_SINCE_CREATION =
+    private static final DataParameter<Integer> DATA_BIRTH_TIME =
             EntityDataManager.<Integer>createKey(EntityTameableDragon.class, DataSerializers.VARINT);
     
     // data NBT IDs
     private static final String NBT_SADDLED = "Saddle";
 
     // server/client delegates
-    private final Map<Class, DragonHelper> helpers = new HashMap<>();
+    private final DragonBreedHelper breedHelper;
+    private final DragonLifeStageHelper lifeStageHelper;
+    private final DragonReproductionHelper reproductionHelper;
+    private final DragonSoundManager soundManager;
+    private final DragonInteractHelper interactHelper;
+    private final DragonOwnerTracker ownerTracker = new DragonOwnerTracker(this);
     
     // client-only delegates
     private final DragonBodyHelper bodyHelper = new DragonBodyHelper(this);
+    private final DragonParticleHelper particleHelper;
+    private final DragonAnimator animator;
+    
+    // server-only delegates
+    private final DragonBrain brain;
+    
+    // all active delegates in update order and their tick rates
+    private final DragonHelper[] helpers;
+    private final int[] helperTickRates;
+    private final String[] helperProfileSections;
+    private final int[] helperUpdateTicks;
+    
+    // navigators for both movement modes, swapped when the mode changes
+    private final PathNavigate navigatorGround;
+    private PathNavigate navigatorFlying;
+    private long flyingModeTime;
+    
+    // chunk used for the last altitude lookup
+    private Chunk altitudeChunk;
+    
+    // server update level of detail, re-evaluated once per second
+    private EnumDragonTickLevel tickLevel = EnumDragonTickLevel.FULL;
+    
+    // index keys in the world's dragon registry, set by the registry itself
+    DragonRegistry.Entry registryEntry;
     
     public EntityTameableDragon(World world) {
         super(world);
@@ -109,24 +147,41 @@ public class EntityTameableDragon extends EntityTameable {
         stepHeight = 1;
         
         // create entity delegates
-        addHelper(new DragonBreedHelper(this, DATA_BREED));
-        addHelper(new DragonLifeStageHelper(this, DATA_TICKS_SINCE_CREATION));
-        addHelper(new DragonReproductionHelper(this, DATA_BREEDER, DATA_REPRO_COUNT));
-        addHelper(new DragonSoundManager(this));
-        addHelper(new DragonInteractHelper(this));
+        List<DragonHelper> helperList = new ArrayList<>();
+        helperList.add(breedHelper = new DragonBreedHelper(this, DATA_BREED));
+        helperList.add(lifeStageHelper = new DragonLifeStageHelper(this, DATA_BIRTH_TIME));
+        helperList.add(reproductionHelper = new DragonReproductionHelper(this, DATA_BREEDER, DATA_REPRO_COUNT));
+        helperList.add(soundManager = new DragonSoundManager(this));
+        helperList.add(interactHelper = new DragonInteractHelper(this));
         
         if (isClient()) {
-            addHelper(new DragonParticleHelper(this));
-            addHelper(new DragonAnimator(this));
+            helperList.add(particleHelper = new DragonParticleHelper(this));
+            helperList.add(animator = new DragonAnimator(this));
+            brain = null;
         } else {
-            addHelper(new DragonBrain(this));
+            particleHelper = null;
+            animator = null;
+            helperList.add(brain = new DragonBrain(this));
+        }
+        
+        helpers = helperList.toArray(new DragonHelper[helperList.size()]);
+        helperTickRates = new int[helpers.length];
+        helperProfileSections = new String[helpers.length];
+        helperUpdateTicks = new int[helpers.length];
+        for (int i = 0; i < helpers.length; i++) {
+            L.trace("addHelper({})", helpers[i].getClass().getName());
+            helperTickRates[i] = helpers[i].getTickRate();
+            helperProfileSections[i] = "helper." + helpers[i].getClass().getSimpleName();
         }
         
+        navigatorGround = navigator;
         moveHelper = new DragonMoveHelper(this);
         aiSit = new EntityAISit(this);
         
         // init helpers
-        helpers.values().forEach(DragonHelper::applyEntityAttributes);
+        for (DragonHelper helper : helpers) {
+            helper.applyEntityAttributes();
+        }
     }
     
     @Override
@@ -198,8 +253,22 @@ public class EntityTameableDragon extends EntityTameable {
      * Returns the distance to the ground while the entity is flying.
      */
     public double getAltitude() {
-        BlockPos groundPos = worldObj.getHeight(getPosition());
-        return posY - groundPos.getY();
+        int x = MathHelper.floor_double(posX);
+        int z = MathHelper.floor_double(posZ);
+        
+        // the chunk is kept as long as the dragon stays above it, the height
+        // map is read directly so changes to it are visible immediately
+        Chunk chunk = altitudeChunk;
+        if (chunk == null || !chunk.isLoaded()
+                || chunk.xPosition != x >> 4 || chunk.zPosition != z >> 4) {
+            chunk = altitudeChunk = worldObj.getChunkProvider().getLoadedChunk(x >> 4, z >> 4);
+            if (chunk == null) {
+                // unknown ground level, same as World.getHeight()
+                return posY;
+            }
+        }
+        
+        return posY - chunk.getHeightValue(x & 15, z & 15);
     }
     
     /**
@@ -237,7 +306,9 @@ public class EntityTameableDragon extends EntityTameable {
         super.writeEntityToNBT(nbt);
         nbt.setBoolean(NBT_SADDLED, isSaddled());
         
-        helpers.values().forEach(helper -> helper.writeToNBT(nbt));
+        for (DragonHelper helper : helpers) {
+            helper.writeToNBT(nbt);
+        }
     }
 
     /**
@@ -248,58 +319,166 @@ public class EntityTameableDragon extends EntityTameable {
         super.readEntityFromNBT(nbt);
         setSaddled(nbt.getBoolean(NBT_SADDLED));
         
-        helpers.values().forEach(helper -> helper.readFromNBT(nbt));
+        for (DragonHelper helper : helpers) {
+            helper.readFromNBT(nbt);
+        }
+    }
+    
+    @Override
+    public void notifyDataManagerChange(DataParameter<?> key) {
+        super.notifyDataManagerChange(key);
+        
+        // may be called by the super constructors before the helpers exist
+        if (helpers != null) {
+            for (DragonHelper helper : helpers) {
+                helper.notifyDataManagerChange(key);
+            }
+        }
     }
     
     @Override
     public void onLivingUpdate() {
-        helpers.values().forEach(DragonHelper::onLivingUpdate);
+        if (isServer() && ticksExisted % TICK_LEVEL_UPDATE_INTERVAL == 0) {
+            tickLevel = EnumDragonTickLevel.forDragon(this);
+        }
+        
+        // keep the registry indices in sync, also on skipped ticks since
+        // the dragon may still move
+        if (registryEntry != null) {
+            registryEntry.update();
+        }
+        
+        // skip the helpers on ticks that are left out by the current level of
+        // detail, the AI tasks skip themselves
+        if (isDetailTick()) {
+            updateHelpers();
+        }
         
         if (isServer()) {
             // set home position near owner when tamed
             if (isTamed()) {
-                Entity owner = getOwner();
-                if (owner != null) {
-                    setHomePosAndDistance(owner.getPosition(), HOME_RADIUS);
-                }
+                ownerTracker.updateHomePosition();
             }
 
             // update flying state based on the distance to the ground
-            boolean flying = canFly() && getAltitude() > ALTITUDE_FLYING_THRESHOLD;
+            boolean flying = updateFlyingMode();
             if (flying != isFlying()) {
+                Object flyingEvent = DragonFlightRecorder.FLYING_SWITCH.begin();
+                
                 // notify client
                 setFlying(flying);
+                flyingModeTime = worldObj.getTotalWorldTime();
                 
-                // clear tasks (needs to be done before switching the navigator!)
-                getBrain().clearTasks();
-                
-                // update AI follow range (needs to be updated before creating 
-                // new PathNavigate!)
+                // update AI follow range, which is read by the navigators
+                // on each path search
                 getEntityAttribute(FOLLOW_RANGE).setBaseValue(
                         flying ? BASE_FOLLOW_RANGE_FLYING : BASE_FOLLOW_RANGE);
                 
                 // update pathfinding method
+                getBrain().clearPath();
                 if (flying) {
-                    navigator = new PathNavigateFlying(this, worldObj);
+                    if (navigatorFlying == null) {
+                        navigatorFlying = new PathNavigateFlying(this, worldObj);
+                    }
+                    navigator = navigatorFlying;
                 } else {
-                    navigator = new PathNavigateGround(this, worldObj);
+                    navigator = navigatorGround;
                 }
                 
-                // tasks need to be updated after switching modes
+                // switch to the task set of the new mode, which needs to be
+                // done after switching the navigator
                 getBrain().updateAITasks();
+                
+                if (flyingEvent != null) {
+                    DragonFlightRecorder.FLYING_SWITCH.commit(flyingEvent, getEntityId(), flying);
+                }
             }
         }
         
         super.onLivingUpdate();
     }
     
+    private void updateHelpers() {
+        // update helpers in a fixed order, skipping those that don't need
+        // an update on this tick
+        Object helperEvent = DragonFlightRecorder.TICK_PHASE.begin();
+        for (int i = 0; i < helpers.length; i++) {
+            int tickRate = helperTickRates[i];
+            if (tickRate > 0 && ticksExisted % tickRate == 0) {
+                // pass the ticks since the last update so timers keep their
+                // pace on reduced tick levels
+                int ticks = Math.max(1, ticksExisted - helperUpdateTicks[i]);
+                helperUpdateTicks[i] = ticksExisted;
+                
+                long profileStart = DragonProfiler.begin();
+                helpers[i].onLivingUpdate(ticks);
+                DragonProfiler.end(worldObj, helperProfileSections[i], profileStart);
+            }
+        }
+        if (helperEvent != null) {
+            DragonFlightRecorder.TICK_PHASE.commit(helperEvent, getEntityId(), "helpers");
+        }
+    }
+    
+    private boolean updateFlyingMode() {
+        if (!canFly()) {
+            return false;
+        }
+        
+        // stay in the current mode for a while to avoid rapid mode changes
+        // when hovering near the ground
+        boolean flying = isFlying();
+        if (worldObj.getTotalWorldTime() - flyingModeTime < FLYING_MODE_MIN_TICKS) {
+            return flying;
+        }
+        
+        // use a lower altitude for landing than for starting
+        double altitude = getAltitude();
+        if (flying) {
+            return altitude > ALTITUDE_LANDING_THRESHOLD;
+        } else {
+            return altitude > ALTITUDE_FLYING_THRESHOLD;
+        }
+    }
+    
+    /**
+     * Returns true if the helpers and the AI are updated on this tick.
+     * 
+     * @return true on full update ticks
+     */
+    public boolean isDetailTick() {
+        return ticksExisted % tickLevel.getTickInterval() == 0;
+    }
+    
+    public EnumDragonTickLevel getTickLevel() {
+        return tickLevel;
+    }
+    
+    @Override
+    protected void updateAITasks() {
+        // called by the vanilla AI update after the navigation, which can't be
+        // overridden, so the tasks of the brain are updated here instead of
+        // the vanilla task lists
+        brain.updateTasks();
+        super.updateAITasks();
+    }
+    
+    @Override
+    protected PathNavigate getNewNavigator(World worldIn) {
+        return new PathNavigateWalking(this, worldIn);
+    }
+    
     @Override
     public void moveEntityWithHeading(float strafe, float forward) {
         // disable method while flying, the movement is done entirely by
         // moveEntity() and this one just makes the dragon to fall slowly when
         // hovering
         if (!isFlying()) {
+            Object moveEvent = DragonFlightRecorder.TICK_PHASE.begin();
             super.moveEntityWithHeading(strafe, forward);
+            if (moveEvent != null) {
+                DragonFlightRecorder.TICK_PHASE.commit(moveEvent, getEntityId(), "movement");
+            }
         }
     }
     
@@ -308,7 +487,9 @@ public class EntityTameableDragon extends EntityTameable {
      */
     @Override
     protected void onDeathUpdate() {
-        helpers.values().forEach(DragonHelper::onDeathUpdate);
+        for (DragonHelper helper : helpers) {
+            helper.onDeathUpdate();
+        }
         
         // unmount any riding entities
         removePassengers();
@@ -332,7 +513,9 @@ public class EntityTameableDragon extends EntityTameable {
     
     @Override
     public void setDead() {
-        helpers.values().forEach(DragonHelper::onDeath);
+        for (DragonHelper helper : helpers) {
+            helper.onDeath();
+        }
         super.setDead();
     }
 
@@ -607,45 +790,36 @@ public class EntityTameableDragon extends EntityTameable {
         return getReproductionHelper().createChild(mate);
     }
     
-    private void addHelper(DragonHelper helper) {
-        L.trace("addHelper({})", helper.getClass().getName());
-        helpers.put(helper.getClass(), helper);
-    }
-    
-    private <T extends DragonHelper> T getHelper(Class<T> clazz) {
-        return (T) helpers.get(clazz);
-    }
-
     public DragonBreedHelper getBreedHelper() {
-        return getHelper(DragonBreedHelper.class);
+        return breedHelper;
     }
     
     public DragonLifeStageHelper getLifeStageHelper() {
-        return getHelper(DragonLifeStageHelper.class);
+        return lifeStageHelper;
     }
     
     public DragonReproductionHelper getReproductionHelper() {
-        return getHelper(DragonReproductionHelper.class);
+        return reproductionHelper;
     }
     
     public DragonParticleHelper getParticleHelper() {
-        return getHelper(DragonParticleHelper.class);
+        return particleHelper;
     }
     
     public DragonAnimator getAnimator() {
-        return getHelper(DragonAnimator.class);
+        return animator;
     }
     
     public DragonSoundManager getSoundManager() {
-        return getHelper(DragonSoundManager.class);
+        return soundManager;
     }
     
     public DragonBrain getBrain() {
-        return getHelper(DragonBrain.class);
+        return brain;
     }
     
     public DragonInteractHelper getInteractHelper() {
-        return getHelper(DragonInteractHelper.class);
+        return interactHelper;
     }
     
     /**
@@ -687,6 +861,12 @@ public class EntityTameableDragon extends EntityTameable {
         return false;
     }
 
+    @Override
+    public EntityLivingBase getOwner() {
+        // cached, since the UUID lookup loops through all players
+        return ownerTracker.getOwner();
+    }
+    
     public EntityPlayer getRidingPlayer() {
         Entity entity = getControllingPassenger();
         if (entity instanceof EntityPlayer) {
@@ -0,0 +1,54 @@
+/*
+ ** 2016 September 05
+ **
+ ** The author disclaims copyright to this source code.  In place of
+ ** a legal notice, here is a blessing:
+ **    May you do good and not evil.
+ **    May you find forgiveness for yourself and forgive others.
+ **    May you share freely, never taking more than you give.
+ */
+package info.ata4.minecraft.dragon.server.entity.ai;
+
+import info.ata4.minecraft.dragon.server.entity.EntityTameableDragon;
+import info.ata4.minecraft.dragon.server.util.DragonFlightRecorder;
+import info.ata4.minecraft.dragon.server.util.DragonProfiler;
+import net.minecraft.entity.ai.EntityAITasks;
+import net.minecraft.profiler.Profiler;
+
+/**
+ * Task list that only updates its tasks on the detail ticks of the dragon.
+ * Navigation and movement are updated by the vanilla AI update and keep running
+ * on all ticks.
+ * 
+ * @author Nico Bergemann <barracuda415 at yahoo.de>
+ */
+public class DragonAITasks extends EntityAITasks {
+    
+    private final EntityTameableDragon dragon;
+    
+    // profiler section and recorder phase of the updates
+    private final String section;
+
+    public DragonAITasks(EntityTameableDragon dragon, Profiler profiler, String section) {
+        super(profiler);
+        this.dragon = dragon;
+        this.section = section;
+    }
+
+    @Override
+    public void onUpdateTasks() {
+        if (!dragon.isDetailTick()) {
+            return;
+        }
+        
+        long profileStart = DragonProfiler.begin();
+        Object event = DragonFlightRecorder.TICK_PHASE.begin();
+        
+        super.onUpdateTasks();
+        
+        DragonProfiler.end(dragon.worldObj, section, profileStart);
+        if (event != null) {
+            DragonFlightRecorder.TICK_PHASE.commit(event, dragon.getEntityId(), section);
+        }
+    }
+}
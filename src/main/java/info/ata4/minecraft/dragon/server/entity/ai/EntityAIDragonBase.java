@@ -10,9 +10,13 @@
 package info.ata4.minecraft.dragon.server.entity.ai;
 
 import info.ata4.minecraft.dragon.server.entity.EntityTameableDragon;
+import info.ata4.minecraft.dragon.server.entity.ai.path.PathNavigateFlying;
+import info.ata4.minecraft.dragon.server.entity.helper.DragonBrain;
 import java.util.Random;
 import static net.minecraft.entity.SharedMonsterAttributes.FOLLOW_RANGE;
+import net.minecraft.entity.Entity;
 import net.minecraft.entity.ai.EntityAIBase;
+import net.minecraft.pathfinding.PathNavigate;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.world.World;
 
@@ -33,7 +37,43 @@ public abstract class EntityAIDragonBase extends EntityAIBase {
     }
     
     protected boolean tryMoveToBlockPos(BlockPos pos, double speed) {
-        return dragon.getNavigator().tryMoveToXYZ(pos.getX() + 0.5, pos.getY() + 0.5, pos.getZ() + 0.5, speed);
+        return tryMoveToBlockPos(pos, speed, null);
+    }
+    
+    /**
+     * Moves to a block position. Flying paths are searched asynchronously, so
+     * the search may still fail after this method has returned true, in which
+     * case the handler is called on a later tick.
+     * 
+     * @param pos target position
+     * @param speed movement speed
+     * @param noPathHandler handler for failed asynchronous searches, may be null
+     * @return false if there's no path to the target
+     */
+    protected boolean tryMoveToBlockPos(BlockPos pos, double speed, Runnable noPathHandler) {
+        PathNavigate navigator = dragon.getNavigator();
+        double x = pos.getX() + 0.5;
+        double y = pos.getY() + 0.5;
+        double z = pos.getZ() + 0.5;
+        
+        if (navigator instanceof PathNavigateFlying) {
+            return ((PathNavigateFlying) navigator).tryMoveToXYZ(x, y, z, speed, noPathHandler);
+        }
+        
+        return navigator.tryMoveToXYZ(x, y, z, speed);
+    }
+    
+    /**
+     * Moves to an entity that may be moving itself, with the path searches
+     * throttled by the brain.
+     * 
+     * @param target target entity
+     * @param speed movement speed
+     * @return true if the dragon is following a path to the target
+     * @see DragonBrain#tryMoveToEntity(Entity, double)
+     */
+    protected boolean tryMoveToEntity(Entity target, double speed) {
+        return dragon.getBrain().tryMoveToEntity(target, speed);
     }
     
     protected double getFollowRange() {
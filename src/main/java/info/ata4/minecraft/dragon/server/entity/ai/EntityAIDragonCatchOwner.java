@@ -84,7 +84,7 @@ public class EntityAIDragonCatchOwner extends EntityAIDragonBase {
         if (dragon.getDistanceToEntity(owner) < dragon.width) {
             owner.startRiding(dragon);
         } else {
-            dragon.getNavigator().tryMoveToEntityLiving(owner, 1);
+            tryMoveToEntity(owner, 1);
         }
     }
 }
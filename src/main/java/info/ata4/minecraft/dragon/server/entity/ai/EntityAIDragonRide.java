@@ -37,7 +37,7 @@ public class EntityAIDragonRide extends EntityAIDragonBase implements PrivateAcc
 
     @Override
     public void startExecuting() {
-        dragon.getNavigator().clearPathEntity();
+        dragon.getBrain().clearPath();
     }
     
     @Override
@@ -49,6 +49,6 @@ public class EntityAIDragonFollowOwner extends EntityAIDragonBase {
     
     @Override
     public void updateTask() {
-        dragon.getNavigator().tryMoveToEntityLiving(owner, 1);
+        tryMoveToEntity(owner, 1);
     }
 }
@@ -59,10 +59,15 @@ public class EntityAIDragonLand extends EntityAIDragonBase {
 
     @Override
     public void startExecuting() {
-        // try to fly to ground block position
-        if (!tryMoveToBlockPos(landingPos, speed)) {
-            // probably too high, so simply descend vertically
-            tryMoveToBlockPos(dragon.getPosition().down(4), speed);
+        // try to fly to ground block position, the search may also fail
+        // after it has been started
+        if (!tryMoveToBlockPos(landingPos, speed, this::descend)) {
+            descend();
         }
     }
+    
+    private void descend() {
+        // probably too high, so simply descend vertically
+        tryMoveToBlockPos(dragon.getPosition().down(4), speed);
+    }
 }
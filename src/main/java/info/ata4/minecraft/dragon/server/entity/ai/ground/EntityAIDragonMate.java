@@ -10,11 +10,10 @@
 package info.ata4.minecraft.dragon.server.entity.ai.ground;
 
 import info.ata4.minecraft.dragon.server.entity.ai.EntityAIDragonBase;
+import info.ata4.minecraft.dragon.server.entity.DragonRegistry;
 import info.ata4.minecraft.dragon.server.entity.EntityTameableDragon;
 import info.ata4.minecraft.dragon.server.entity.helper.EnumDragonLifeStage;
 
-import java.util.List;
-
 /**
  * Derivative EntityAIMate class to deal with some special values that can't be
  * applied with an extension thanks to the visibility.
@@ -69,7 +68,7 @@ public class EntityAIDragonMate extends EntityAIDragonBase {
     @Override
     public void updateTask() {
         dragon.getLookHelper().setLookPositionWithEntity(dragonMate, 10.0F, (float) dragon.getVerticalFaceSpeed());
-        dragon.getNavigator().tryMoveToEntityLiving(dragonMate, speed);
+        tryMoveToEntity(dragonMate, speed);
         
         ++spawnBabyDelay;
 
@@ -79,23 +78,16 @@ public class EntityAIDragonMate extends EntityAIDragonBase {
     }
 
     /**
-     * Loops through nearby animals and finds another animal of the same type
-     * that can be mated with. Returns the first valid mate found.
+     * Looks up nearby dragons in the world's dragon registry and returns the
+     * first one that can be mated with.
      */
     private EntityTameableDragon getNearbyMate() {
-        double followRange = getFollowRange();
-        List<EntityTameableDragon> nearbyDragons = world.getEntitiesWithinAABB(
-            EntityTameableDragon.class,
-            dragon.getEntityBoundingBox().expand(followRange, followRange, followRange)
-        );
-        
-        for (EntityTameableDragon nearbyDragon : nearbyDragons) {
-            if (dragon.canMateWith(nearbyDragon)) {
-                return nearbyDragon;
-            }
+        DragonRegistry registry = DragonRegistry.get(world);
+        if (registry == null) {
+            return null;
         }
         
-        return null;
+        return registry.findDragonInRange(dragon, getFollowRange(), dragon::canMateWith);
     }
 
     /**
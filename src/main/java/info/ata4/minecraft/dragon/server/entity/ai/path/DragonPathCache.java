@@ -0,0 +1,198 @@
+/*
+ ** 2016 September 07
+ **
+ ** The author disclaims copyright to this source code.  In place of
+ ** a legal notice, here is a blessing:
+ **    May you do good and not evil.
+ **    May you find forgiveness for yourself and forgive others.
+ **    May you share freely, never taking more than you give.
+ */
+package info.ata4.minecraft.dragon.server.entity.ai.path;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import net.minecraft.pathfinding.Path;
+import net.minecraft.pathfinding.PathPoint;
+import net.minecraft.world.World;
+
+/**
+ * Short-lived cache of flight paths. Dragons that start close to each other
+ * and fly to the same target, such as those following the same owner, reuse
+ * the path of the first one, moved to their own start point.
+ * 
+ * @author Nico Bergemann <barracuda415 at yahoo.de>
+ */
+class DragonPathCache {
+    
+    private static final Map<World, DragonPathCache> CACHES = new WeakHashMap<>();
+    
+    // ticks a path stays in the cache
+    private static final int LIFETIME = 20;
+    
+    // size of the regions that share paths as power of two, 8 blocks around
+    // the start point and 4 blocks around the end point
+    private static final int START_REGION_BITS = 3;
+    private static final int END_REGION_BITS = 2;
+    
+    /**
+     * Returns the path cache for a server world.
+     * 
+     * @param world server world
+     * @return path cache
+     */
+    static DragonPathCache forWorld(World world) {
+        return CACHES.computeIfAbsent(world, key -> new DragonPathCache());
+    }
+    
+    private final Map<Key, Entry> entries = new HashMap<>();
+    
+    private DragonPathCache() {
+    }
+    
+    /**
+     * Returns a cached path that was searched from a nearby start point to a
+     * nearby end point, moved to the given points.
+     * 
+     * @param start start point
+     * @param end end point
+     * @param box entity box size
+     * @param time current world time
+     * @return moved path or null if there's no cached path or if the moved
+     *         path would be blocked
+     */
+    Path getPath(PathPoint start, PathPoint end, int[] box, long time) {
+        removeExpired(time);
+        
+        Entry entry = entries.get(new Key(start, end, box));
+        if (entry == null) {
+            return null;
+        }
+        
+        return entry.moveTo(start, end);
+    }
+    
+    /**
+     * Adds a searched path to the cache.
+     * 
+     * @param start start point of the search
+     * @param end end point of the search
+     * @param box entity box size
+     * @param path found path
+     * @param occupancy occupancy map of the search
+     * @param time current world time
+     */
+    void putPath(PathPoint start, PathPoint end, int[] box, Path path, OccupancyMap occupancy, long time) {
+        removeExpired(time);
+        
+        // copy the points, the path itself is going to be followed
+        PathPoint[] points = new PathPoint[path.getCurrentPathLength()];
+        for (int i = 0; i < points.length; i++) {
+            points[i] = path.getPathPointFromIndex(i);
+        }
+        
+        entries.put(new Key(start, end, box),
+                new Entry(start, end, points, occupancy, time + LIFETIME));
+    }
+    
+    private void removeExpired(long time) {
+        // the entries hold the snapshots of their searches, so don't keep
+        // them any longer than needed
+        entries.values().removeIf(entry -> entry.expireTime <= time);
+    }
+    
+    private static class Key {
+        
+        private final int startX;
+        private final int startY;
+        private final int startZ;
+        private final int endX;
+        private final int endY;
+        private final int endZ;
+        private final int boxWidth;
+        private final int boxHeight;
+        
+        private Key(PathPoint start, PathPoint end, int[] box) {
+            startX = start.xCoord >> START_REGION_BITS;
+            startY = start.yCoord >> START_REGION_BITS;
+            startZ = start.zCoord >> START_REGION_BITS;
+            endX = end.xCoord >> END_REGION_BITS;
+            endY = end.yCoord >> END_REGION_BITS;
+            endZ = end.zCoord >> END_REGION_BITS;
+            boxWidth = box[0];
+            boxHeight = box[1];
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = startX;
+            hash = 31 * hash + startY;
+            hash = 31 * hash + startZ;
+            hash = 31 * hash + endX;
+            hash = 31 * hash + endY;
+            hash = 31 * hash + endZ;
+            hash = 31 * hash + boxWidth;
+            hash = 31 * hash + boxHeight;
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key that = (Key) obj;
+            return startX == that.startX && startY == that.startY && startZ == that.startZ
+                && endX == that.endX && endY == that.endY && endZ == that.endZ
+                && boxWidth == that.boxWidth && boxHeight == that.boxHeight;
+        }
+    }
+    
+    private static class Entry {
+        
+        private final PathPoint start;
+        private final PathPoint end;
+        private final PathPoint[] points;
+        private final OccupancyMap occupancy;
+        private final long expireTime;
+        
+        private Entry(PathPoint start, PathPoint end, PathPoint[] points, OccupancyMap occupancy, long expireTime) {
+            this.start = start;
+            this.end = end;
+            this.points = points;
+            this.occupancy = occupancy;
+            this.expireTime = expireTime;
+        }
+        
+        private Path moveTo(PathPoint newStart, PathPoint newEnd) {
+            int dx = newStart.xCoord - start.xCoord;
+            int dy = newStart.yCoord - start.yCoord;
+            int dz = newStart.zCoord - start.zCoord;
+            
+            PathPoint[] moved = new PathPoint[points.length];
+            for (int i = 0; i < points.length; i++) {
+                PathPoint point = points[i];
+                moved[i] = new PathPoint(point.xCoord + dx, point.yCoord + dy, point.zCoord + dz);
+            }
+            
+            // still lead to the end point if the original path did
+            int last = points.length - 1;
+            if (points[last].equals(end)) {
+                moved[last] = new PathPoint(newEnd.xCoord, newEnd.yCoord, newEnd.zCoord);
+            }
+            
+            // check the moved path against the blocks of the original search,
+            // which fails for segments that leave the snapshot
+            for (int i = 1; i < moved.length; i++) {
+                if (!occupancy.isDirectPathClear(moved[i - 1], moved[i])) {
+                    return null;
+                }
+            }
+            
+            return new Path(moved);
+        }
+    }
+}
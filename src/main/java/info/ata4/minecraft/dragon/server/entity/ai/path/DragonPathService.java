@@ -0,0 +1,196 @@
+/*
+ ** 2016 September 07
+ **
+ ** The author disclaims copyright to this source code.  In place of
+ ** a legal notice, here is a blessing:
+ **    May you do good and not evil.
+ **    May you find forgiveness for yourself and forgive others.
+ **    May you share freely, never taking more than you give.
+ */
+package info.ata4.minecraft.dragon.server.entity.ai.path;
+
+import info.ata4.minecraft.dragon.server.util.DragonFlightRecorder;
+import info.ata4.minecraft.dragon.server.util.DragonProfiler;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import net.minecraft.entity.EntityLiving;
+import net.minecraft.pathfinding.Path;
+import net.minecraft.pathfinding.PathPoint;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.MathHelper;
+import net.minecraft.world.World;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Computes flight paths on a pool of worker threads. The server thread only
+ * takes a snapshot of the blocks around the search, the search itself runs on
+ * the snapshot only.
+ * 
+ * @author Nico Bergemann <barracuda415 at yahoo.de>
+ */
+final class DragonPathService {
+    
+    private static final Logger L = LogManager.getLogger();
+    
+    // leave at least one core to the server thread
+    private static final int THREADS = Math.max(1, Math.min(2,
+            Runtime.getRuntime().availableProcessors() - 1));
+    
+    // blocks around the start and end point that are copied for detours
+    private static final int SNAPSHOT_MARGIN = 8;
+    
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(THREADS, runnable -> {
+        Thread thread = new Thread(runnable, "Dragon Path Worker");
+        thread.setDaemon(true);
+        return thread;
+    });
+    
+    /**
+     * Starts a path search for an entity. Must be called on the server thread.
+     * 
+     * @param entity moving entity
+     * @param world world of the entity
+     * @param end end point of the path
+     * @param maxDistance maximum path length
+     * @return pending request or null if the end is too far away for any path
+     */
+    static Request submit(EntityLiving entity, World world, PathPoint end, float maxDistance) {
+        long profileStart = DragonProfiler.begin();
+        
+        PathPoint start = NodeProcessorFlying.getStartPoint(entity);
+        int[] box = NodeProcessorFlying.getBoxSize(entity);
+        
+        // the search only visits points that are closer than the maximum
+        // distance to both ends, but copying all of them would cost more than
+        // most searches, so only the box around both ends plus a margin for
+        // detours is copied, which also limits the search to that box
+        int range = MathHelper.ceiling_float_int(maxDistance);
+        BlockPos min = new BlockPos(
+            getSnapshotMin(start.xCoord, end.xCoord, range),
+            getSnapshotMin(start.yCoord, end.yCoord, range),
+            getSnapshotMin(start.zCoord, end.zCoord, range)
+        );
+        BlockPos max = new BlockPos(
+            getSnapshotMax(start.xCoord, end.xCoord, range) + box[0] - 1,
+            getSnapshotMax(start.yCoord, end.yCoord, range) + box[1] - 1,
+            getSnapshotMax(start.zCoord, end.zCoord, range) + box[2] - 1
+        );
+        
+        // too far away, there can't be any path
+        if (min.getX() > max.getX() || min.getY() > max.getY() || min.getZ() > max.getZ()) {
+            DragonProfiler.end(world, "navigation.snapshot", profileStart);
+            return null;
+        }
+        
+        Request request = new Request(world, end);
+        DragonPathCache cache = DragonPathCache.forWorld(world);
+        Path cachedPath = cache.getPath(start, end, box, world.getTotalWorldTime());
+        
+        if (cachedPath != null) {
+            // another dragon has just searched the same path
+            request.future = CompletableFuture.completedFuture(cachedPath);
+        } else {
+            OccupancyMap snapshot = OccupancyMap.snapshot(world, min, max, box[0], box[1], box[2]);
+            int entityId = entity.getEntityId();
+            
+            request.future = EXECUTOR.submit(() -> {
+                Object event = DragonFlightRecorder.PATH.begin();
+                Path path = PathFinderFlying.findPath(snapshot, start, end,
+                        maxDistance, () -> request.cancelled);
+                if (event != null) {
+                    DragonFlightRecorder.PATH.commit(event, entityId,
+                            path != null ? path.getCurrentPathLength() : 0, path != null);
+                }
+                return path;
+            });
+            
+            request.cache = cache;
+            request.start = start;
+            request.box = box;
+            request.snapshot = snapshot;
+        }
+        
+        DragonProfiler.end(world, "navigation.snapshot", profileStart);
+        
+        return request;
+    }
+    
+    private static int getSnapshotMin(int start, int end, int range) {
+        return Math.max(Math.max(start, end) - range, Math.min(start, end) - SNAPSHOT_MARGIN);
+    }
+    
+    private static int getSnapshotMax(int start, int end, int range) {
+        return Math.min(Math.min(start, end) + range, Math.max(start, end) + SNAPSHOT_MARGIN);
+    }
+    
+    private DragonPathService() {
+        // static utility class
+    }
+    
+    /**
+     * Pending path search.
+     */
+    static final class Request {
+        
+        private final World world;
+        private final PathPoint end;
+        private volatile boolean cancelled;
+        private Future<Path> future;
+        
+        // search parameters for the path cache, only set for searched paths
+        private DragonPathCache cache;
+        private PathPoint start;
+        private int[] box;
+        private OccupancyMap snapshot;
+        
+        private Request(World world, PathPoint end) {
+            this.world = world;
+            this.end = end;
+        }
+        
+        PathPoint getEnd() {
+            return end;
+        }
+        
+        boolean isDone() {
+            return future.isDone();
+        }
+        
+        /**
+         * Returns the path of a finished search. Must be called on the server
+         * thread.
+         * 
+         * @return path or null if no path was found
+         */
+        Path getPath() {
+            try {
+                Path path = future.get();
+                
+                // share the path with dragons that fly the same way
+                if (path != null && cache != null) {
+                    cache.putPath(start, end, box, path, snapshot, world.getTotalWorldTime());
+                }
+                
+                return path;
+            } catch (InterruptedException | CancellationException ex) {
+                return null;
+            } catch (ExecutionException ex) {
+                L.warn("Path search failed", ex.getCause());
+                return null;
+            }
+        }
+        
+        /**
+         * Aborts the search if it's still running.
+         */
+        void cancel() {
+            cancelled = true;
+            future.cancel(false);
+        }
+    }
+}
@@ -9,14 +9,15 @@
  */
 package info.ata4.minecraft.dragon.server.entity.ai.path;
 
-import net.minecraft.block.material.Material;
-import net.minecraft.block.state.IBlockState;
+import static net.minecraft.entity.SharedMonsterAttributes.FOLLOW_RANGE;
 import net.minecraft.entity.Entity;
+import net.minecraft.entity.EntityLiving;
 import net.minecraft.pathfinding.PathPoint;
 import net.minecraft.pathfinding.SwimNodeProcessor;
 import net.minecraft.util.EnumFacing;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.MathHelper;
+import net.minecraft.world.IBlockAccess;
 
 /**
  * Based on SwimNodeProcessor but for air blocks.
@@ -24,17 +25,91 @@ import net.minecraft.util.math.MathHelper;
  * @author Nico Bergemann <barracuda415 at yahoo.de>
  */
 public class NodeProcessorFlying extends SwimNodeProcessor {
+    
+    /**
+     * Returns the size of the box that is checked for obstacles at each
+     * point of a path.
+     * 
+     * @param entity moving entity
+     * @return box width and height
+     */
+    static int[] getBoxSize(Entity entity) {
+        int width = MathHelper.floor_float(entity.width + 1);
+        int height = MathHelper.floor_float(entity.height + 1);
+        return new int[] {width, height, width};
+    }
+    
+    /**
+     * Returns the path point for the current position of an entity.
+     * 
+     * @param entity moving entity
+     * @return start point
+     */
+    static PathPoint getStartPoint(Entity entity) {
+        return new PathPoint(
+            MathHelper.floor_double(entity.getEntityBoundingBox().minX),
+            MathHelper.floor_double(entity.getEntityBoundingBox().minY + 0.5),
+            MathHelper.floor_double(entity.getEntityBoundingBox().minZ)
+        );
+    }
+    
+    /**
+     * Returns the path point that places an entity at the given coordinates.
+     * 
+     * @param entity moving entity
+     * @param x target X
+     * @param y target Y
+     * @param z target Z
+     * @return end point
+     */
+    static PathPoint getEndPoint(Entity entity, double x, double y, double z) {
+        return new PathPoint(
+            MathHelper.floor_double(x - (entity.width / 2.0)),
+            MathHelper.floor_double(y + 0.5),
+            MathHelper.floor_double(z - (entity.width / 2.0))
+        );
+    }
+    
+    private OccupancyMap occupancy;
+    
+    @Override
+    public void initProcessor(IBlockAccess sourceIn, EntityLiving mob) {
+        super.initProcessor(sourceIn, mob);
+        
+        int[] box = getBoxSize(mob);
+        entitySizeX = box[0];
+        entitySizeY = box[1];
+        entitySizeZ = box[2];
+        
+        // cover the same area that PathNavigate caches for the search
+        int range = (int) (mob.getEntityAttribute(FOLLOW_RANGE).getAttributeValue() + 8);
+        BlockPos center = new BlockPos(mob);
+        occupancy = new OccupancyMap(sourceIn, center.getX() - range, center.getZ() - range,
+                range * 2 + 1, range * 2 + 1, entitySizeX, entitySizeY, entitySizeZ);
+    }
+    
+    @Override
+    public void postProcess() {
+        super.postProcess();
+        occupancy = null;
+    }
+    
+    /**
+     * Returns the occupancy map of the current search.
+     * 
+     * @return occupancy map
+     */
+    OccupancyMap getOccupancy() {
+        return occupancy;
+    }
 
     /**
      * Returns PathPoint for given coordinates
      */
     @Override
     public PathPoint getPathPointToCoords(double x, double y, double target) {
-        return openPoint(
-            MathHelper.floor_double(x - (entity.width / 2.0)),
-            MathHelper.floor_double(y + 0.5),
-            MathHelper.floor_double(target - (entity.width / 2.0))
-        );
+        PathPoint point = getEndPoint(entity, x, y, target);
+        return openPoint(point.xCoord, point.yCoord, point.zCoord);
     }
 
     @Override
@@ -42,7 +117,7 @@ public class NodeProcessorFlying extends SwimNodeProcessor {
         int i = 0;
         
         for (EnumFacing facing : EnumFacing.values()) {
-            PathPoint point = getSafePoint(entity,
+            PathPoint point = getSafePoint(
                 currentPoint.xCoord + facing.getFrontOffsetX(),
                 currentPoint.yCoord + facing.getFrontOffsetY(),
                 currentPoint.zCoord + facing.getFrontOffsetZ()
@@ -59,22 +134,9 @@ public class NodeProcessorFlying extends SwimNodeProcessor {
     /**
      * Returns a point that the entity can safely move to
      */
-    private PathPoint getSafePoint(Entity entityIn, int x, int y, int z) {
-        BlockPos pos = new BlockPos(x, y, z);
-        
-        entitySizeX = MathHelper.floor_float(entityIn.width + 1);
-        entitySizeY = MathHelper.floor_float(entityIn.height + 1);
-        entitySizeZ = MathHelper.floor_float(entityIn.width + 1);
-
-        for (int ix = 0; ix < entitySizeX; ++ix) {
-            for (int iy = 0; iy < entitySizeY; ++iy) {
-                for (int iz = 0; iz < entitySizeZ; ++iz) {
-                    IBlockState blockState = blockaccess.getBlockState(pos.add(ix, iy, iz));
-                    if (blockState.getMaterial() != Material.AIR) {
-                        return null;
-                    }
-                }
-            }
+    private PathPoint getSafePoint(int x, int y, int z) {
+        if (!occupancy.isClear(x, y, z)) {
+            return null;
         }
 
         return openPoint(x, y, z);
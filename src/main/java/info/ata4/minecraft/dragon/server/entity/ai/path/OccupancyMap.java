@@ -0,0 +1,353 @@
+/*
+ ** 2016 September 07
+ **
+ ** The author disclaims copyright to this source code.  In place of
+ ** a legal notice, here is a blessing:
+ **    May you do good and not evil.
+ **    May you find forgiveness for yourself and forgive others.
+ **    May you share freely, never taking more than you give.
+ */
+package info.ata4.minecraft.dragon.server.entity.ai.path;
+
+import java.util.Arrays;
+import net.minecraft.block.material.Material;
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.pathfinding.PathPoint;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.MathHelper;
+import net.minecraft.world.IBlockAccess;
+import net.minecraft.world.World;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.storage.ExtendedBlockStorage;
+
+/**
+ * Packed solid/air snapshot of the blocks around a path search. Each column of
+ * the search area is stored as 64 block high slabs in one long per slab.
+ * <p>
+ * Maps created for a block access read each slab on first access and must be
+ * used on the thread that owns the block access. Snapshots are filled
+ * completely on creation and don't reference the world afterwards, so they
+ * can be searched on any thread. Boxes that reach outside of a snapshot are
+ * never clear, since nothing is known about the blocks there.
+ * 
+ * @author Nico Bergemann <barracuda415 at yahoo.de>
+ */
+class OccupancyMap {
+    
+    private static final int SLAB_BITS = 6;
+    private static final int SLAB_HEIGHT = 1 << SLAB_BITS;
+    private static final int WORLD_HEIGHT = 256;
+    private static final int SLABS = WORLD_HEIGHT / SLAB_HEIGHT;
+    
+    private static long bitRange(int from, int to) {
+        return (-1L >>> (SLAB_HEIGHT - 1 - to)) & (-1L << from);
+    }
+    
+    private static boolean isSolid(IBlockState state) {
+        return state.getMaterial() != Material.AIR;
+    }
+    
+    /**
+     * Copies the solid blocks of an area from the loaded chunks of a world.
+     * Blocks in unloaded chunks and outside of the area are treated as air.
+     * 
+     * @param world server world
+     * @param min minimum corner of the area
+     * @param max maximum corner of the area
+     * @param boxX entity box size on the X axis
+     * @param boxY entity box size on the Y axis
+     * @param boxZ entity box size on the Z axis
+     * @return filled map
+     */
+    static OccupancyMap snapshot(World world, BlockPos min, BlockPos max, int boxX, int boxY, int boxZ) {
+        OccupancyMap map = new OccupancyMap(null, min.getX(), min.getZ(),
+                max.getX() - min.getX() + 1, max.getZ() - min.getZ() + 1,
+                boxX, boxY, boxZ);
+        
+        int minY = Math.max(min.getY(), 0);
+        int maxY = Math.min(max.getY(), WORLD_HEIGHT - 1);
+        map.minY = minY;
+        map.maxY = maxY;
+        
+        for (int cx = min.getX() >> 4; cx <= max.getX() >> 4; cx++) {
+            for (int cz = min.getZ() >> 4; cz <= max.getZ() >> 4; cz++) {
+                Chunk chunk = world.getChunkProvider().getLoadedChunk(cx, cz);
+                if (chunk != null) {
+                    map.copyChunk(chunk, minY, maxY);
+                }
+            }
+        }
+        
+        // everything has been read, mark all slabs as loaded
+        Arrays.fill(map.loaded, -1L);
+        
+        return map;
+    }
+    
+    private final BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+    private final IBlockAccess world;
+    private final int minX;
+    private final int minZ;
+    private final int sizeX;
+    private final int sizeZ;
+    
+    // height range of the snapshot
+    private int minY = 0;
+    private int maxY = WORLD_HEIGHT - 1;
+    
+    // size of the entity box in blocks
+    private final int boxX;
+    private final int boxY;
+    private final int boxZ;
+    
+    // solid bits per column slab and whether the slab was read already
+    private final long[] solid;
+    private final long[] loaded;
+    
+    /**
+     * Creates a map that reads slabs from the block access on demand.
+     * 
+     * @param world block access of the search
+     * @param minX minimum X of the cached area
+     * @param minZ minimum Z of the cached area
+     * @param sizeX size of the cached area on the X axis
+     * @param sizeZ size of the cached area on the Z axis
+     * @param boxX entity box size on the X axis
+     * @param boxY entity box size on the Y axis
+     * @param boxZ entity box size on the Z axis
+     */
+    OccupancyMap(IBlockAccess world, int minX, int minZ, int sizeX, int sizeZ,
+            int boxX, int boxY, int boxZ) {
+        this.world = world;
+        this.minX = minX;
+        this.minZ = minZ;
+        this.sizeX = sizeX;
+        this.sizeZ = sizeZ;
+        this.boxX = boxX;
+        this.boxY = boxY;
+        this.boxZ = boxZ;
+        
+        int slabs = sizeX * sizeZ * SLABS;
+        solid = new long[slabs];
+        loaded = new long[(slabs + 63) >> 6];
+    }
+    
+    private void copyChunk(Chunk chunk, int minY, int maxY) {
+        ExtendedBlockStorage[] storages = chunk.getBlockStorageArray();
+        
+        int chunkX = chunk.xPosition << 4;
+        int chunkZ = chunk.zPosition << 4;
+        int fromX = Math.max(minX, chunkX);
+        int toX = Math.min(minX + sizeX - 1, chunkX + 15);
+        int fromZ = Math.max(minZ, chunkZ);
+        int toZ = Math.min(minZ + sizeZ - 1, chunkZ + 15);
+        
+        for (int sy = minY >> 4; sy <= maxY >> 4; sy++) {
+            ExtendedBlockStorage storage = storages[sy];
+            
+            // empty sections are all air
+            if (storage == Chunk.NULL_BLOCK_STORAGE || storage.isEmpty()) {
+                continue;
+            }
+            
+            int fromY = Math.max(minY, sy << 4);
+            int toY = Math.min(maxY, (sy << 4) + 15);
+            
+            for (int x = fromX; x <= toX; x++) {
+                for (int z = fromZ; z <= toZ; z++) {
+                    int index = slabIndex(x - minX, z - minZ, 0);
+                    for (int y = fromY; y <= toY; y++) {
+                        if (isSolid(storage.get(x & 15, y & 15, z & 15))) {
+                            solid[index + (y >> SLAB_BITS)] |= 1L << (y & (SLAB_HEIGHT - 1));
+                        }
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * Checks if the entity box is free of solid blocks at a position.
+     * 
+     * @param x minimum X of the box
+     * @param y minimum Y of the box
+     * @param z minimum Z of the box
+     * @return true if all blocks in the box are air
+     */
+    boolean isClear(int x, int y, int z) {
+        return isClear(x, y, z, boxX, boxY, boxZ);
+    }
+    
+    /**
+     * Checks if the entity can move from a position to one of its 26
+     * neighbours. Diagonal moves also require the corner blocks in between to
+     * be clear, so the entity won't cut through corners. The current position
+     * itself isn't checked, so the entity can always move away from blocks it
+     * is stuck in.
+     * 
+     * @param x current X
+     * @param y current Y
+     * @param z current Z
+     * @param dx X offset, -1 to 1
+     * @param dy Y offset, -1 to 1
+     * @param dz Z offset, -1 to 1
+     * @return true if the move is possible
+     */
+    boolean canMove(int x, int y, int z, int dx, int dy, int dz) {
+        int nx = x + dx;
+        int ny = y + dy;
+        int nz = z + dz;
+        
+        if (!isClear(nx, ny, nz)) {
+            return false;
+        }
+        
+        // straight moves don't touch any other blocks
+        if (Math.abs(dx) + Math.abs(dy) + Math.abs(dz) < 2) {
+            return true;
+        }
+        
+        // check the blocks that are in the bounding box of both positions, but
+        // in neither of the boxes themselves, column by column
+        int minY = Math.min(y, ny);
+        int maxY = Math.max(y, ny) + boxY - 1;
+        
+        for (int ix = Math.min(x, nx); ix < Math.max(x, nx) + boxX; ix++) {
+            for (int iz = Math.min(z, nz); iz < Math.max(z, nz) + boxZ; iz++) {
+                boolean inStart = ix >= x && ix < x + boxX && iz >= z && iz < z + boxZ;
+                boolean inEnd = ix >= nx && ix < nx + boxX && iz >= nz && iz < nz + boxZ;
+                
+                int fromY = minY;
+                int toY = maxY;
+                
+                // columns of a box only leave the row on the other side of
+                // a vertical move unchecked
+                if (inStart || inEnd) {
+                    if (inStart && inEnd || dy == 0) {
+                        continue;
+                    }
+                    
+                    fromY = toY = inStart == (dy < 0) ? minY : maxY;
+                }
+                
+                if (!isClear(ix, fromY, iz, 1, toY - fromY + 1, 1)) {
+                    return false;
+                }
+            }
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Checks if the entity can fly in a straight line between two points.
+     * 
+     * @param from start point
+     * @param to end point
+     * @return true if all blocks touched on the way are air
+     */
+    boolean isDirectPathClear(PathPoint from, PathPoint to) {
+        int dx = to.xCoord - from.xCoord;
+        int dy = to.yCoord - from.yCoord;
+        int dz = to.zCoord - from.zCoord;
+        int steps = Math.max(Math.abs(dx), Math.max(Math.abs(dy), Math.abs(dz)));
+        
+        // check the blocks covered while moving between each pair of
+        // consecutive samples, which are at most one block apart
+        for (int i = 0; i < steps; i++) {
+            double t1 = i / (double) steps;
+            double t2 = (i + 1) / (double) steps;
+            
+            int minX = MathHelper.floor_double(from.xCoord + dx * (dx < 0 ? t2 : t1));
+            int minY = MathHelper.floor_double(from.yCoord + dy * (dy < 0 ? t2 : t1));
+            int minZ = MathHelper.floor_double(from.zCoord + dz * (dz < 0 ? t2 : t1));
+            int maxX = MathHelper.ceiling_double_int(from.xCoord + dx * (dx < 0 ? t1 : t2) + boxX);
+            int maxY = MathHelper.ceiling_double_int(from.yCoord + dy * (dy < 0 ? t1 : t2) + boxY);
+            int maxZ = MathHelper.ceiling_double_int(from.zCoord + dz * (dz < 0 ? t1 : t2) + boxZ);
+            
+            if (!isClear(minX, minY, minZ, maxX - minX, maxY - minY, maxZ - minZ)) {
+                return false;
+            }
+        }
+        
+        return true;
+    }
+    
+    private boolean isClear(int x, int y, int z, int sizeX, int sizeY, int sizeZ) {
+        if (world == null && !isInside(x, y, z, sizeX, sizeY, sizeZ)) {
+            return false;
+        }
+        
+        // blocks outside of the world height are always air
+        int minY = Math.max(y, 0);
+        int maxY = Math.min(y + sizeY - 1, WORLD_HEIGHT - 1);
+        if (minY > maxY) {
+            return true;
+        }
+        
+        int minSlab = minY >> SLAB_BITS;
+        int maxSlab = maxY >> SLAB_BITS;
+        
+        for (int slab = minSlab; slab <= maxSlab; slab++) {
+            int slabY = slab << SLAB_BITS;
+            long mask = bitRange(
+                Math.max(minY - slabY, 0),
+                Math.min(maxY - slabY, SLAB_HEIGHT - 1)
+            );
+            
+            for (int ix = x; ix < x + sizeX; ix++) {
+                for (int iz = z; iz < z + sizeZ; iz++) {
+                    if ((getSlab(ix, slab, iz) & mask) != 0) {
+                        return false;
+                    }
+                }
+            }
+        }
+        
+        return true;
+    }
+    
+    private boolean isInside(int x, int y, int z, int sizeX, int sizeY, int sizeZ) {
+        return x >= minX && x + sizeX <= minX + this.sizeX
+            && z >= minZ && z + sizeZ <= minZ + this.sizeZ
+            && y >= minY && y + sizeY - 1 <= maxY;
+    }
+    
+    private int slabIndex(int lx, int lz, int slab) {
+        return (lx * sizeZ + lz) * SLABS + slab;
+    }
+    
+    private long getSlab(int x, int slab, int z) {
+        int lx = x - minX;
+        int lz = z - minZ;
+        
+        // don't cache columns outside of the search area, snapshots never get
+        // here for those
+        if (lx < 0 || lz < 0 || lx >= sizeX || lz >= sizeZ) {
+            return readSlab(x, slab, z);
+        }
+        
+        int index = slabIndex(lx, lz, slab);
+        long loadedBit = 1L << index;
+        if ((loaded[index >> 6] & loadedBit) == 0) {
+            solid[index] = readSlab(x, slab, z);
+            loaded[index >> 6] |= loadedBit;
+        }
+        
+        return solid[index];
+    }
+    
+    private long readSlab(int x, int slab, int z) {
+        long bits = 0;
+        int slabY = slab << SLAB_BITS;
+        
+        for (int i = 0; i < SLAB_HEIGHT; i++) {
+            pos.setPos(x, slabY + i, z);
+            if (isSolid(world.getBlockState(pos))) {
+                bits |= 1L << i;
+            }
+        }
+        
+        return bits;
+    }
+}
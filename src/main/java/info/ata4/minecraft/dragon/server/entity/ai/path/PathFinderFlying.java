@@ -0,0 +1,272 @@
+/*
+ ** 2016 September 07
+ **
+ ** The author disclaims copyright to this source code.  In place of
+ ** a legal notice, here is a blessing:
+ **    May you do good and not evil.
+ **    May you find forgiveness for yourself and forgive others.
+ **    May you share freely, never taking more than you give.
+ */
+package info.ata4.minecraft.dragon.server.entity.ai.path;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.BooleanSupplier;
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.EntityLiving;
+import net.minecraft.pathfinding.Path;
+import net.minecraft.pathfinding.PathFinder;
+import net.minecraft.pathfinding.PathPoint;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.MathHelper;
+import net.minecraft.world.IBlockAccess;
+
+/**
+ * A* path finder for flying entities that moves to all 26 neighbours of a node,
+ * estimates distances with the octile metric and drops waypoints that can be
+ * skipped with a straight flight.
+ * 
+ * @author Nico Bergemann <barracuda415 at yahoo.de>
+ */
+public class PathFinderFlying extends PathFinder {
+    
+    // upper limit for the search effort of a single path request
+    private static final int MAX_VISITED_NODES = 4096;
+    
+    // number of visited nodes between checks for cancelled searches
+    private static final int CANCEL_CHECK_INTERVAL = 256;
+    
+    private static final float SQRT_2 = MathHelper.sqrt_float(2);
+    private static final float SQRT_3 = MathHelper.sqrt_float(3);
+    
+    private static long nodeKey(int x, int y, int z) {
+        return ((long) (x & 0x3FFFFFF) << 38) | ((long) (y & 0xFFF) << 26) | (z & 0x3FFFFFF);
+    }
+    
+    /**
+     * Returns the octile distance between two points, which is the length of
+     * the shortest path using straight and diagonal moves only.
+     */
+    private static float octileDistance(int x1, int y1, int z1, int x2, int y2, int z2) {
+        int dx = Math.abs(x2 - x1);
+        int dy = Math.abs(y2 - y1);
+        int dz = Math.abs(z2 - z1);
+        
+        int max = Math.max(dx, Math.max(dy, dz));
+        int min = Math.min(dx, Math.min(dy, dz));
+        int mid = dx + dy + dz - max - min;
+        
+        return (SQRT_3 - SQRT_2) * min + (SQRT_2 - 1) * mid + max;
+    }
+    
+    private final NodeProcessorFlying nodeProcessor;
+
+    public PathFinderFlying(NodeProcessorFlying nodeProcessor) {
+        super(nodeProcessor);
+        this.nodeProcessor = nodeProcessor;
+    }
+
+    @Override
+    public Path findPath(IBlockAccess worldIn, EntityLiving entitylivingIn, Entity targetEntity, float maxDistance) {
+        return findPath(worldIn, entitylivingIn, targetEntity.posX,
+                targetEntity.getEntityBoundingBox().minY, targetEntity.posZ, maxDistance);
+    }
+
+    @Override
+    public Path findPath(IBlockAccess worldIn, EntityLiving entitylivingIn, BlockPos targetPos, float maxDistance) {
+        return findPath(worldIn, entitylivingIn, targetPos.getX() + 0.5,
+                targetPos.getY() + 0.5, targetPos.getZ() + 0.5, maxDistance);
+    }
+    
+    private Path findPath(IBlockAccess world, EntityLiving entity, double x, double y, double z, float maxDistance) {
+        nodeProcessor.initProcessor(world, entity);
+        
+        try {
+            PathPoint start = nodeProcessor.getStart();
+            PathPoint end = nodeProcessor.getPathPointToCoords(x, y, z);
+            return findPath(nodeProcessor.getOccupancy(), start, end, maxDistance, () -> false);
+        } finally {
+            nodeProcessor.postProcess();
+        }
+    }
+    
+    /**
+     * Searches a path between two points. Doesn't access anything but the
+     * occupancy map, so it may run on any thread that owns the map.
+     * 
+     * @param occupancy occupancy map of the search area
+     * @param start start point
+     * @param end end point
+     * @param maxDistance maximum path length
+     * @param cancelled checked regularly to abort the search early
+     * @return path or null if there is none or if the search was cancelled
+     */
+    static Path findPath(OccupancyMap occupancy, PathPoint start, PathPoint end,
+            float maxDistance, BooleanSupplier cancelled) {
+        List<PathPoint> points = search(occupancy, start, end, maxDistance, cancelled);
+        if (points == null) {
+            return null;
+        }
+
+        points = smooth(occupancy, points);
+        return new Path(points.toArray(new PathPoint[points.size()]));
+    }
+    
+    /**
+     * Searches a path from start to end. If the end can't be reached, the path
+     * leads to the point closest to it instead.
+     * 
+     * @return list of path points or null if no point is closer than the start
+     */
+    private static List<PathPoint> search(OccupancyMap occupancy, PathPoint start,
+            PathPoint end, float maxDistance, BooleanSupplier cancelled) {
+        Map<Long, Node> nodes = new HashMap<>();
+        PriorityQueue<Node> open = new PriorityQueue<>();
+        
+        Node startNode = new Node(start.xCoord, start.yCoord, start.zCoord, null, 0,
+                octileDistance(start.xCoord, start.yCoord, start.zCoord,
+                        end.xCoord, end.yCoord, end.zCoord));
+        nodes.put(startNode.key, startNode);
+        open.add(startNode);
+        
+        Node closest = startNode;
+        int visited = 0;
+        
+        while (!open.isEmpty() && visited < MAX_VISITED_NODES) {
+            Node current = open.poll();
+            
+            // skip nodes that were replaced by a shorter route
+            if (current.closed || nodes.get(current.key) != current) {
+                continue;
+            }
+            
+            current.closed = true;
+            visited++;
+            
+            if (visited % CANCEL_CHECK_INTERVAL == 0 && cancelled.getAsBoolean()) {
+                return null;
+            }
+            
+            if (current.h < closest.h) {
+                closest = current;
+            }
+            
+            if (current.x == end.xCoord && current.y == end.yCoord && current.z == end.zCoord) {
+                break;
+            }
+            
+            for (int dx = -1; dx <= 1; dx++) {
+                for (int dy = -1; dy <= 1; dy++) {
+                    for (int dz = -1; dz <= 1; dz++) {
+                        if (dx == 0 && dy == 0 && dz == 0) {
+                            continue;
+                        }
+                        
+                        int nx = current.x + dx;
+                        int ny = current.y + dy;
+                        int nz = current.z + dz;
+                        
+                        long key = nodeKey(nx, ny, nz);
+                        Node next = nodes.get(key);
+                        if (next != null && next.closed) {
+                            continue;
+                        }
+                        
+                        int axes = Math.abs(dx) + Math.abs(dy) + Math.abs(dz);
+                        float g = current.g + (axes == 1 ? 1 : axes == 2 ? SQRT_2 : SQRT_3);
+                        if (g >= maxDistance || next != null && g >= next.g) {
+                            continue;
+                        }
+                        
+                        float h = octileDistance(nx, ny, nz, end.xCoord, end.yCoord, end.zCoord);
+                        if (h >= maxDistance) {
+                            continue;
+                        }
+                        
+                        if (!occupancy.canMove(current.x, current.y, current.z, dx, dy, dz)) {
+                            continue;
+                        }
+                        
+                        next = new Node(nx, ny, nz, current, g, h);
+                        nodes.put(key, next);
+                        open.add(next);
+                    }
+                }
+            }
+        }
+        
+        if (closest == startNode) {
+            return null;
+        }
+        
+        List<PathPoint> points = new ArrayList<>();
+        for (Node node = closest; node != null; node = node.parent) {
+            points.add(0, new PathPoint(node.x, node.y, node.z));
+        }
+        
+        return points;
+    }
+    
+    /**
+     * Removes all waypoints that can be skipped by flying straight from an
+     * earlier waypoint to a later one.
+     */
+    private static List<PathPoint> smooth(OccupancyMap occupancy, List<PathPoint> points) {
+        List<PathPoint> smoothed = new ArrayList<>();
+        smoothed.add(points.get(0));
+        
+        int last = points.size() - 1;
+        int from = 0;
+        
+        while (from < last) {
+            PathPoint fromPoint = points.get(from);
+            
+            // find the farthest point that can be reached directly, which
+            // is always true for the next one
+            int to = last;
+            while (to > from + 1 && !occupancy.isDirectPathClear(fromPoint, points.get(to))) {
+                to--;
+            }
+            
+            smoothed.add(points.get(to));
+            from = to;
+        }
+        
+        return smoothed;
+    }
+    
+    private static class Node implements Comparable<Node> {
+        
+        private final int x;
+        private final int y;
+        private final int z;
+        private final long key;
+        private final Node parent;
+        
+        // cost from the start, estimate to the end and sum of both
+        private final float g;
+        private final float h;
+        private final float f;
+        
+        private boolean closed;
+        
+        private Node(int x, int y, int z, Node parent, float g, float h) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.key = nodeKey(x, y, z);
+            this.parent = parent;
+            this.g = g;
+            this.h = h;
+            this.f = g + h;
+        }
+
+        @Override
+        public int compareTo(Node that) {
+            return Float.compare(f, that.f);
+        }
+    }
+}
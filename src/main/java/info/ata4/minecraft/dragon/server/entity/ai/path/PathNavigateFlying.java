@@ -9,17 +9,43 @@
  */
 package info.ata4.minecraft.dragon.server.entity.ai.path;
 
+import info.ata4.minecraft.dragon.server.util.DragonFlightRecorder;
+import info.ata4.minecraft.dragon.server.util.DragonProfiler;
+import net.minecraft.entity.Entity;
 import net.minecraft.entity.EntityLiving;
+import net.minecraft.pathfinding.Path;
 import net.minecraft.pathfinding.PathFinder;
 import net.minecraft.pathfinding.PathNavigateSwimmer;
+import net.minecraft.pathfinding.PathPoint;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.MathHelper;
+import net.minecraft.util.math.Vec3d;
 import net.minecraft.world.World;
 
 /**
- * Based on PathNavigateSwimmer but for air blocks.
+ * Based on PathNavigateSwimmer but for air blocks. Paths requested by AI tasks
+ * are computed asynchronously and applied on the next update after the search
+ * has finished.
  * 
  * @author Nico Bergemann <barracuda415 at yahoo.de>
  */
 public class PathNavigateFlying extends PathNavigateSwimmer {
+    
+    // minimum ticks between two path updates caused by block changes, same as
+    // in PathNavigate
+    private static final int PATH_UPDATE_INTERVAL = 20;
+    
+    // pending asynchronous path search, the speed for its path and the
+    // handler that is called if no path was found
+    private DragonPathService.Request pathRequest;
+    private double pathRequestSpeed;
+    private Runnable noPathHandler;
+    
+    // target of the last requested path, which is searched again if blocks
+    // have changed along the path
+    private Vec3d pathTarget;
+    private boolean pathUpdatePending;
+    private long pathUpdateTime;
 
     public PathNavigateFlying(EntityLiving entitylivingIn, World worldIn) {
         super(entitylivingIn, worldIn);
@@ -27,11 +53,184 @@ public class PathNavigateFlying extends PathNavigateSwimmer {
 
     @Override
     protected PathFinder getPathFinder() {
-        return new PathFinder(new NodeProcessorFlying());
+        return new PathFinderFlying(new NodeProcessorFlying());
     }
 
     @Override
     protected boolean canNavigate() {
         return !isInLiquid();
     }
+    
+    @Override
+    public boolean tryMoveToXYZ(double x, double y, double z, double speedIn) {
+        return tryMoveToXYZ(x, y, z, speedIn, null);
+    }
+    
+    /**
+     * Same as {@link #tryMoveToXYZ(double, double, double, double)}, but with
+     * a handler that is called on a later update if the search has been
+     * started but no path was found.
+     * 
+     * @param x target X
+     * @param y target Y
+     * @param z target Z
+     * @param speedIn movement speed
+     * @param noPathHandler handler for failed searches, may be null
+     * @return false if there can't be a path to the target
+     */
+    public boolean tryMoveToXYZ(double x, double y, double z, double speedIn,
+            Runnable noPathHandler) {
+        // same target as getPathToXYZ
+        return requestPath(
+            MathHelper.floor_double(x) + 0.5,
+            (int) y + 0.5,
+            MathHelper.floor_double(z) + 0.5,
+            speedIn,
+            noPathHandler
+        );
+    }
+
+    @Override
+    public boolean tryMoveToEntityLiving(Entity entityIn, double speedIn) {
+        return requestPath(entityIn.posX, entityIn.getEntityBoundingBox().minY,
+                entityIn.posZ, speedIn, null);
+    }
+    
+    private boolean requestPath(double x, double y, double z, double speedIn,
+            Runnable noPathHandler) {
+        if (!canNavigate()) {
+            return false;
+        }
+        
+        PathPoint end = NodeProcessorFlying.getEndPoint(theEntity, x, y, z);
+        pathRequestSpeed = speedIn;
+        
+        if (pathRequest == null || !pathRequest.getEnd().equals(end)) {
+            // the old path isn't needed anymore
+            if (pathRequest != null) {
+                pathRequest.cancel();
+            }
+            
+            pathRequest = DragonPathService.submit(theEntity, worldObj, end, getPathSearchRange());
+            
+            // the target is out of range, same as a failed search in
+            // tryMoveToXYZ of PathNavigate
+            if (pathRequest == null) {
+                clearPathEntity();
+                return false;
+            }
+        }
+        
+        // otherwise keep searching if the target is still the same
+        this.noPathHandler = noPathHandler;
+        pathTarget = new Vec3d(x, y, z);
+        pathUpdatePending = false;
+        return true;
+    }
+    
+    /**
+     * Searches the path to the last target again, like updatePath of
+     * PathNavigate does for the target of getPathToPos.
+     */
+    private void requestPathUpdate() {
+        PathPoint end = NodeProcessorFlying.getEndPoint(theEntity,
+                pathTarget.xCoord, pathTarget.yCoord, pathTarget.zCoord);
+        pathRequest = DragonPathService.submit(theEntity, worldObj, end, getPathSearchRange());
+        if (pathRequest == null) {
+            clearPathEntity();
+        }
+    }
+    
+    @Override
+    public boolean noPath() {
+        // pending searches count as paths so the AI tasks keep running
+        return pathRequest == null && super.noPath();
+    }
+    
+    @Override
+    public void clearPathEntity() {
+        if (pathRequest != null) {
+            pathRequest.cancel();
+            pathRequest = null;
+        }
+        
+        noPathHandler = null;
+        pathTarget = null;
+        pathUpdatePending = false;
+        
+        super.clearPathEntity();
+    }
+    
+    @Override
+    public void updatePath() {
+        // paths of tryMoveToXYZ and tryMoveToEntityLiving are searched without
+        // getPathToPos, so PathNavigate doesn't know their target
+        if (pathTarget == null) {
+            super.updatePath();
+            return;
+        }
+        
+        // a running search already sees the changed blocks
+        if (pathRequest == null) {
+            pathUpdatePending = true;
+        }
+    }
+    
+    @Override
+    public Path getPathToPos(BlockPos pos) {
+        Object event = DragonFlightRecorder.PATH.begin();
+        Path path = super.getPathToPos(pos);
+        commitPathEvent(event, path);
+        return path;
+    }
+
+    @Override
+    public Path getPathToEntityLiving(Entity entityIn) {
+        Object event = DragonFlightRecorder.PATH.begin();
+        Path path = super.getPathToEntityLiving(entityIn);
+        commitPathEvent(event, path);
+        return path;
+    }
+    
+    private void commitPathEvent(Object event, Path path) {
+        if (event != null) {
+            DragonFlightRecorder.PATH.commit(event, theEntity.getEntityId(),
+                    path != null ? path.getCurrentPathLength() : 0, path != null);
+        }
+    }
+    
+    @Override
+    public void onUpdateNavigation() {
+        long profileStart = DragonProfiler.begin();
+        
+        // search the path again after blocks have changed along it
+        long time = worldObj.getTotalWorldTime();
+        if (pathUpdatePending && time - pathUpdateTime > PATH_UPDATE_INTERVAL) {
+            pathUpdatePending = false;
+            pathUpdateTime = time;
+            if (!super.noPath()) {
+                requestPathUpdate();
+            }
+        }
+        
+        // apply the path of a finished search
+        if (pathRequest != null && pathRequest.isDone()) {
+            Path path = pathRequest.getPath();
+            Runnable handler = noPathHandler;
+            pathRequest = null;
+            noPathHandler = null;
+            
+            // let the caller try something else if there's no path
+            if (!setPath(path, pathRequestSpeed) && handler != null) {
+                handler.run();
+            }
+        }
+        
+        // noPath() is false while waiting for the first path, but there's
+        // nothing to follow yet
+        if (pathRequest == null || !super.noPath()) {
+            super.onUpdateNavigation();
+        }
+        DragonProfiler.end(worldObj, "navigation.flying", profileStart);
+    }
 }
@@ -0,0 +1,34 @@
+/*
+ ** 2016 September 14
+ **
+ ** The author disclaims copyright to this source code.  In place of
+ ** a legal notice, here is a blessing:
+ **    May you do good and not evil.
+ **    May you find forgiveness for yourself and forgive others.
+ **    May you share freely, never taking more than you give.
+ */
+package info.ata4.minecraft.dragon.server.entity.ai.path;
+
+import info.ata4.minecraft.dragon.server.util.DragonProfiler;
+import net.minecraft.entity.EntityLiving;
+import net.minecraft.pathfinding.PathNavigateGround;
+import net.minecraft.world.World;
+
+/**
+ * PathNavigateGround with its updates timed by the dragon profiler.
+ * 
+ * @author Nico Bergemann <barracuda415 at yahoo.de>
+ */
+public class PathNavigateWalking extends PathNavigateGround {
+
+    public PathNavigateWalking(EntityLiving entitylivingIn, World worldIn) {
+        super(entitylivingIn, worldIn);
+    }
+    
+    @Override
+    public void onUpdateNavigation() {
+        long profileStart = DragonProfiler.begin();
+        super.onUpdateNavigation();
+        DragonProfiler.end(worldObj, "navigation.ground", profileStart);
+    }
+}
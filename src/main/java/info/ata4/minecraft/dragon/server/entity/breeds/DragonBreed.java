@@ -118,11 +118,17 @@ public abstract class DragonBreed {
         return Items.FISH;
     }
     
-    public void onUpdate(EntityTameableDragon dragon) {
-        placeFootprintBlocks(dragon);
+    /**
+     * Called on each update of the breed helper.
+     * 
+     * @param dragon updated dragon
+     * @param ticks ticks since the last update
+     */
+    public void onUpdate(EntityTameableDragon dragon, int ticks) {
+        placeFootprintBlocks(dragon, ticks);
     }
     
-    protected void placeFootprintBlocks(EntityTameableDragon dragon) {
+    protected void placeFootprintBlocks(EntityTameableDragon dragon, int ticks) {
         // only apply on server
         if (!dragon.isServer()) {
             return;
@@ -139,6 +145,12 @@ public abstract class DragonBreed {
             return;
         }
         
+        // chance that a footprint would have been placed on any of the
+        // skipped ticks
+        if (ticks > 1) {
+            footprintChance = 1 - (float) Math.pow(1 - footprintChance, ticks);
+        }
+        
         // footprint loop, from EntitySnowman.onLivingUpdate with slight tweaks
         World world = dragon.worldObj;
         for (int i = 0; i < 4; i++) {
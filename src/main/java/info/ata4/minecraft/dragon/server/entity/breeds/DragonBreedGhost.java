@@ -39,14 +39,14 @@ public class DragonBreedGhost extends DragonBreed {
     @Override
     public void onEnable(EntityTameableDragon dragon) {
         EntityAIRestrictSun restrictSun = new EntityAIRestrictSun(dragon);
-        dragon.tasks.addTask(2, restrictSun);
+        dragon.getBrain().getTasks().addTask(2, restrictSun);
         appliedTasks.put(dragon, restrictSun);
     }
     
     @Override
     public void onDisable(EntityTameableDragon dragon) {
         if (appliedTasks.containsKey(dragon)) {
-            dragon.tasks.removeTask(appliedTasks.get(dragon));
+            dragon.getBrain().getTasks().removeTask(appliedTasks.get(dragon));
             appliedTasks.remove(dragon);
         }
     }
@@ -0,0 +1,149 @@
+/*
+ ** 2016 August 29
+ **
+ ** The author disclaims copyright to this source code.  In place of
+ ** a legal notice, here is a blessing:
+ **    May you do good and not evil.
+ **    May you find forgiveness for yourself and forgive others.
+ **    May you share freely, never taking more than you give.
+ */
+package info.ata4.minecraft.dragon.server.entity.breeds;
+
+import java.util.HashMap;
+import java.util.Map;
+import net.minecraft.block.Block;
+import net.minecraft.world.biome.Biome;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Lookup table from block IDs and biomes to a bit mask of the breeds that use
+ * the block or biome as habitat. Bit n of a mask corresponds to the breed with
+ * ordinal n.
+ * 
+ * @author Nico Bergemann <barracuda415 at yahoo.de>
+ */
+public final class DragonHabitatTable {
+    
+    private static final Logger L = LogManager.getLogger();
+    private static final EnumDragonBreed[] BREEDS = EnumDragonBreed.values();
+    
+    private static int[] blockMasks;
+    private static final Map<Biome, Integer> BIOME_MASKS = new HashMap<>();
+    
+    private DragonHabitatTable() {
+        // static utility class
+    }
+    
+    /**
+     * Builds the table from the current block registry. Needs to be called
+     * again whenever the block IDs have been remapped.
+     */
+    public static synchronized void rebuild() {
+        int maxID = 0;
+        for (Block block : Block.REGISTRY) {
+            maxID = Math.max(maxID, Block.getIdFromBlock(block));
+        }
+        
+        int[] masks = new int[maxID + 1];
+        int habitatBlocks = 0;
+        
+        for (Block block : Block.REGISTRY) {
+            int mask = 0;
+            for (EnumDragonBreed breed : BREEDS) {
+                if (breed.getBreed().isHabitatBlock(block)) {
+                    mask |= 1 << breed.ordinal();
+                }
+            }
+            
+            if (mask != 0) {
+                masks[Block.getIdFromBlock(block)] = mask;
+                habitatBlocks++;
+            }
+        }
+        
+        L.debug("Habitat table rebuilt with {} habitat blocks in {} block IDs",
+                habitatBlocks, masks.length);
+        
+        blockMasks = masks;
+    }
+    
+    /**
+     * Drops the current table, it will be rebuilt on the next lookup.
+     */
+    public static void invalidate() {
+        blockMasks = null;
+    }
+    
+    private static int[] getBlockMasks() {
+        int[] masks = blockMasks;
+        if (masks == null) {
+            rebuild();
+            masks = blockMasks;
+        }
+        return masks;
+    }
+    
+    /**
+     * Returns the breed mask for a block ID.
+     * 
+     * @param blockID block registry ID
+     * @return breed bit mask, 0 if no breed uses this block
+     */
+    public static int getBlockMask(int blockID) {
+        int[] masks = getBlockMasks();
+        return blockID >= 0 && blockID < masks.length ? masks[blockID] : 0;
+    }
+    
+    /**
+     * Returns the breed mask for a block.
+     * 
+     * @param block block to look up
+     * @return breed bit mask, 0 if no breed uses this block
+     */
+    public static int getBlockMask(Block block) {
+        return getBlockMask(Block.getIdFromBlock(block));
+    }
+    
+    /**
+     * Returns true if the block is habitat for at least one breed.
+     * 
+     * @param blockID block registry ID
+     * @return true if habitat block
+     */
+    public static boolean isHabitatBlock(int blockID) {
+        return getBlockMask(blockID) != 0;
+    }
+    
+    /**
+     * Returns the breed mask for a biome.
+     * 
+     * @param biome biome to look up
+     * @return breed bit mask, 0 if no breed uses this biome
+     */
+    public static synchronized int getBiomeMask(Biome biome) {
+        return BIOME_MASKS.computeIfAbsent(biome, key -> {
+            int mask = 0;
+            for (EnumDragonBreed breed : BREEDS) {
+                if (breed.getBreed().isHabitatBiome(key)) {
+                    mask |= 1 << breed.ordinal();
+                }
+            }
+            return mask;
+        });
+    }
+    
+    /**
+     * Adds an amount to all counters whose breed bit is set in the mask.
+     * 
+     * @param mask breed bit mask
+     * @param counts counters indexed by breed ordinal
+     * @param amount amount to add for each set bit
+     */
+    public static void accumulate(int mask, int[] counts, int amount) {
+        while (mask != 0) {
+            counts[Integer.numberOfTrailingZeros(mask)] += amount;
+            mask &= mask - 1;
+        }
+    }
+}
@@ -10,6 +10,7 @@
 package info.ata4.minecraft.dragon.server.entity.helper;
 
 import info.ata4.minecraft.dragon.server.entity.EntityTameableDragon;
+import info.ata4.minecraft.dragon.server.entity.ai.DragonAITasks;
 import info.ata4.minecraft.dragon.server.entity.ai.EntityAIDragonCatchOwner;
 import info.ata4.minecraft.dragon.server.entity.ai.EntityAIDragonRide;
 import info.ata4.minecraft.dragon.server.entity.ai.air.EntityAIDragonFollowOwner;
@@ -20,8 +21,14 @@ import info.ata4.minecraft.dragon.server.entity.ai.ground.EntityAIDragonWatchIdl
 import info.ata4.minecraft.dragon.server.entity.ai.ground.EntityAIDragonWatchLiving;
 import info.ata4.minecraft.dragon.server.util.EntityClassPredicate;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import net.minecraft.entity.Entity;
 import net.minecraft.entity.ai.EntityAIAttackMelee;
+import net.minecraft.entity.ai.EntityAIBase;
 import net.minecraft.entity.ai.EntityAIFollowParent;
 import net.minecraft.entity.ai.EntityAIHurtByTarget;
 import net.minecraft.entity.ai.EntityAIMoveTowardsRestriction;
@@ -46,6 +53,14 @@ import net.minecraft.pathfinding.PathNavigateGround;
  * @author Nico Bergemann <barracuda415 at yahoo.de>
  */
 public class DragonBrain extends DragonHelper {
+    
+    // minimum ticks between two path searches to a moving target and the
+    // random amount added to it, so dragons in a group don't search together
+    private static final int REPATH_INTERVAL = 5;
+    private static final int REPATH_INTERVAL_JITTER = 10;
+    
+    // distance the target needs to move before a new path is searched
+    private static final double REPATH_DISTANCE = 2;
 
     // mutex 1: movement
     // mutex 2: looking
@@ -58,10 +73,49 @@ public class DragonBrain extends DragonHelper {
     // mutex 1: generic targeting
     private final EntityAITasks targetTasks;
     
+    // task sets per life stage and movement mode, created on first use
+    private final AITaskSet[] taskSets = new AITaskSet[EnumDragonLifeStage.VALUES.length * 2];
+    private final Map<Class<? extends EntityAIBase>, EntityAIBase> taskInstances = new HashMap<>();
+    private AITaskSet currentTaskSet;
+    
+    // target and its position of the last path search, shared by all tasks
+    private Entity repathTarget;
+    private double repathX;
+    private double repathY;
+    private double repathZ;
+    private long repathTime;
+    
     public DragonBrain(EntityTameableDragon dragon) {
         super(dragon);
-        tasks = dragon.tasks;
-        targetTasks = dragon.targetTasks;
+        
+        // the task lists of EntityLiving are updated on every tick, these
+        // ones are updated by the dragon and skip the ticks that are left out
+        // by the level of detail
+        tasks = new DragonAITasks(dragon, dragon.worldObj.theProfiler, "ai.tasks");
+        targetTasks = new DragonAITasks(dragon, dragon.worldObj.theProfiler, "ai.targetTasks");
+        
+        // rebuild tasks whenever the dragon grows up
+        dragon.getLifeStageHelper().addLifeStageListener(
+                (lifeStage, prevLifeStage) -> updateAITasks());
+    }
+    
+    @Override
+    public int getTickRate() {
+        // tasks are executed during the AI update of the dragon
+        return 0;
+    }
+    
+    public EntityAITasks getTasks() {
+        return tasks;
+    }
+    
+    /**
+     * Updates the target tasks and the tasks, in the same order as the vanilla
+     * AI update.
+     */
+    public void updateTasks() {
+        targetTasks.onUpdateTasks();
+        tasks.onUpdateTasks();
     }
     
     public void setAvoidsWater(boolean avoidWater) {
@@ -72,9 +126,54 @@ public class DragonBrain extends DragonHelper {
         }
     }
     
+    /**
+     * Moves to an entity that may be moving itself. A new path is only searched
+     * if there's no path to follow anymore or if the target has moved away from
+     * the position the current path was searched for, and not more often than
+     * the repath interval, no matter which task is asking.
+     * 
+     * @param target target entity
+     * @param speed movement speed
+     * @return true if the dragon is following a path to the target
+     */
+    public boolean tryMoveToEntity(Entity target, double speed) {
+        PathNavigate navigator = dragon.getNavigator();
+        
+        if (target == repathTarget && !navigator.noPath()) {
+            if (target.getDistanceSq(repathX, repathY, repathZ) < REPATH_DISTANCE * REPATH_DISTANCE) {
+                return true;
+            }
+        }
+        
+        // keep going for a bit if the last search was just recently, even if
+        // the current path is outdated or missing
+        long time = dragon.worldObj.getTotalWorldTime();
+        if (target == repathTarget && time < repathTime) {
+            return !navigator.noPath();
+        }
+        
+        repathTarget = target;
+        repathX = target.posX;
+        repathY = target.posY;
+        repathZ = target.posZ;
+        repathTime = time + REPATH_INTERVAL + rand.nextInt(REPATH_INTERVAL_JITTER);
+        
+        return navigator.tryMoveToEntityLiving(target, speed);
+    }
+    
+    /**
+     * Clears the current path and allows an immediate new search, since the
+     * dragon would stop otherwise.
+     */
+    public void clearPath() {
+        dragon.getNavigator().clearPathEntity();
+        repathTarget = null;
+    }
+    
     public void clearTasks() {
         clearTasks(tasks);
         clearTasks(targetTasks);
+        currentTaskSet = null;
     }
     
     public void clearTasks(EntityAITasks tasks) {
@@ -92,56 +191,157 @@ public class DragonBrain extends DragonHelper {
         }
         
         // clear current navigation target
-        dragon.getNavigator().clearPathEntity();
+        clearPath();
         
-        // clear existing tasks
-        clearTasks();
+        // switch to the task set for the current life stage and movement mode
+        int index = dragon.getLifeStageHelper().getLifeStage().ordinal() * 2 + (dragon.isFlying() ? 1 : 0);
+        AITaskSet taskSet = taskSets[index];
+        if (taskSet == null) {
+            taskSet = taskSets[index] = createTaskSet();
+        }
+        
+        if (currentTaskSet == null) {
+            clearTasks();
+        }
+        
+        switchTasks(tasks, currentTaskSet != null ? currentTaskSet.tasks : null, taskSet.tasks);
+        switchTasks(targetTasks, currentTaskSet != null ? currentTaskSet.targetTasks : null, taskSet.targetTasks);
+        currentTaskSet = taskSet;
+    }
+    
+    /**
+     * Replaces the tempt task, which is bound to the breeding item of the
+     * breed it was created for.
+     */
+    public void onBreedChange() {
+        if (taskInstances.remove(EntityAITempt.class) == null) {
+            return;
+        }
+        
+        // rebuild the task sets with the new tempt task on next use
+        Arrays.fill(taskSets, null);
+        if (currentTaskSet != null) {
+            updateAITasks();
+        }
+    }
+    
+    /**
+     * Removes tasks that aren't used in the new set anymore and adds the new
+     * ones. Tasks that are part of both sets are kept running.
+     */
+    private void switchTasks(EntityAITasks tasks, List<AITask> oldTasks, List<AITask> newTasks) {
+        if (oldTasks != null) {
+            for (AITask task : oldTasks) {
+                if (!newTasks.contains(task)) {
+                    tasks.removeTask(task.action);
+                }
+            }
+        }
+        
+        for (AITask task : newTasks) {
+            if (oldTasks == null || !oldTasks.contains(task)) {
+                tasks.addTask(task.priority, task.action);
+            }
+        }
+    }
+    
+    private AITaskSet createTaskSet() {
+        AITaskSet taskSet = new AITaskSet();
         
         // eggs don't have any tasks
         if (dragon.isEgg()) {
-            return;
+            return taskSet;
         }
         
-        tasks.addTask(0, new EntityAIDragonCatchOwner(dragon)); // mutex all
-        tasks.addTask(1, new EntityAIDragonRide(dragon)); // mutex all
-        tasks.addTask(2, new EntityAIDragonFollowOwner(dragon)); // mutex all
-        tasks.addTask(3, new EntityAIMoveTowardsRestriction(dragon, 1)); // mutex 1
+        taskSet.addTask(0, getTask(EntityAIDragonCatchOwner.class, () -> new EntityAIDragonCatchOwner(dragon))); // mutex all
+        taskSet.addTask(1, getTask(EntityAIDragonRide.class, () -> new EntityAIDragonRide(dragon))); // mutex all
+        taskSet.addTask(2, getTask(EntityAIDragonFollowOwner.class, () -> new EntityAIDragonFollowOwner(dragon))); // mutex all
+        taskSet.addTask(3, getTask(EntityAIMoveTowardsRestriction.class, () -> new EntityAIMoveTowardsRestriction(dragon, 1))); // mutex 1
         
         if (dragon.isFlying()) {
-            tasks.addTask(3, new EntityAIDragonLand(dragon, 1)); // mutex 1
+            taskSet.addTask(3, getTask(EntityAIDragonLand.class, () -> new EntityAIDragonLand(dragon, 1))); // mutex 1
         } else {
-            tasks.addTask(2, new EntityAISwimming(dragon)); // mutex 4
-            tasks.addTask(4, dragon.getAISit()); // mutex 4+1
+            taskSet.addTask(2, getTask(EntityAISwimming.class, () -> new EntityAISwimming(dragon))); // mutex 4
+            taskSet.addTask(4, dragon.getAISit()); // mutex 4+1
 
-            tasks.addTask(6, new EntityAITempt(dragon, 0.75, dragon.getBreed().getBreedingItem(), false)); // mutex 2+1
-            tasks.addTask(7, new EntityAIAttackMelee(dragon, 1, true)); // mutex 2+1
+            taskSet.addTask(6, getTask(EntityAITempt.class, () -> new EntityAITempt(dragon, 0.75, dragon.getBreed().getBreedingItem(), false))); // mutex 2+1
+            taskSet.addTask(7, getTask(EntityAIAttackMelee.class, () -> new EntityAIAttackMelee(dragon, 1, true))); // mutex 2+1
 
 //            tasks.addTask(9, new EntityAIDragonFollowOwner(dragon, 1, 12, 128)); // mutex 2+1
-            tasks.addTask(10, new EntityAIWander(dragon, 1)); // mutex 1
-            tasks.addTask(11, new EntityAIDragonWatchIdle(dragon)); // mutex 2
-            tasks.addTask(11, new EntityAIDragonWatchLiving(dragon, 16, 0.05f)); // mutex 2
+            taskSet.addTask(10, getTask(EntityAIWander.class, () -> new EntityAIWander(dragon, 1))); // mutex 1
+            taskSet.addTask(11, getTask(EntityAIDragonWatchIdle.class, () -> new EntityAIDragonWatchIdle(dragon))); // mutex 2
+            taskSet.addTask(11, getTask(EntityAIDragonWatchLiving.class, () -> new EntityAIDragonWatchLiving(dragon, 16, 0.05f))); // mutex 2
 
-            targetTasks.addTask(5, new EntityAIDragonHunt(dragon, EntityAnimal.class, false,
+            taskSet.addTargetTask(5, getTask(EntityAIDragonHunt.class, () -> new EntityAIDragonHunt(dragon, EntityAnimal.class, false,
                 new EntityClassPredicate(
                         EntitySheep.class,
                         EntityPig.class,
                         EntityChicken.class,
                         EntityRabbit.class
                 )
-            )); // mutex 1
+            ))); // mutex 1
 
             if (dragon.isHatchling()) {
-                tasks.addTask(8, new EntityAIFollowParent(dragon, 0.8)); // mutex 2+1
-                tasks.addTask(9, new EntityAIPanic(dragon, 1)); // mutex 1
+                taskSet.addTask(8, getTask(EntityAIFollowParent.class, () -> new EntityAIFollowParent(dragon, 0.8))); // mutex 2+1
+                taskSet.addTask(9, getTask(EntityAIPanic.class, () -> new EntityAIPanic(dragon, 1))); // mutex 1
             } else {
-                targetTasks.addTask(2, new EntityAIOwnerHurtByTarget(dragon)); // mutex 1
-                targetTasks.addTask(3, new EntityAIOwnerHurtTarget(dragon)); // mutex 1
-                targetTasks.addTask(4, new EntityAIHurtByTarget(dragon, false)); // mutex 1
+                taskSet.addTargetTask(2, getTask(EntityAIOwnerHurtByTarget.class, () -> new EntityAIOwnerHurtByTarget(dragon))); // mutex 1
+                taskSet.addTargetTask(3, getTask(EntityAIOwnerHurtTarget.class, () -> new EntityAIOwnerHurtTarget(dragon))); // mutex 1
+                taskSet.addTargetTask(4, getTask(EntityAIHurtByTarget.class, () -> new EntityAIHurtByTarget(dragon, false))); // mutex 1
             }
 
             if (dragon.isAdult()) {
-                tasks.addTask(5, new EntityAIDragonMate(dragon, 0.6)); // mutex 2+1
+                taskSet.addTask(5, getTask(EntityAIDragonMate.class, () -> new EntityAIDragonMate(dragon, 0.6))); // mutex 2+1
+            }
+        }
+        
+        return taskSet;
+    }
+    
+    /**
+     * Returns the task instance of a class, creating it on first use, so all
+     * task sets of this dragon share the same instances.
+     */
+    private EntityAIBase getTask(Class<? extends EntityAIBase> type, Supplier<EntityAIBase> factory) {
+        return taskInstances.computeIfAbsent(type, key -> factory.get());
+    }
+    
+    private static class AITask {
+        
+        private final int priority;
+        private final EntityAIBase action;
+
+        private AITask(int priority, EntityAIBase action) {
+            this.priority = priority;
+            this.action = action;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof AITask)) {
+                return false;
             }
+            AITask other = (AITask) obj;
+            return priority == other.priority && action == other.action;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * priority + System.identityHashCode(action);
+        }
+    }
+    
+    private static class AITaskSet {
+        
+        private final List<AITask> tasks = new ArrayList<>();
+        private final List<AITask> targetTasks = new ArrayList<>();
+        
+        private void addTask(int priority, EntityAIBase action) {
+            tasks.add(new AITask(priority, action));
+        }
+        
+        private void addTargetTask(int priority, EntityAIBase action) {
+            targetTasks.add(new AITask(priority, action));
         }
     }
 }
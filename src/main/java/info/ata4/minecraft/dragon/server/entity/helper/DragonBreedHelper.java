@@ -11,19 +11,17 @@ package info.ata4.minecraft.dragon.server.entity.helper;
 
 import info.ata4.minecraft.dragon.server.entity.EntityTameableDragon;
 import info.ata4.minecraft.dragon.server.entity.breeds.DragonBreed;
+import info.ata4.minecraft.dragon.server.entity.breeds.DragonHabitatTable;
 import info.ata4.minecraft.dragon.server.entity.breeds.EnumDragonBreed;
-import java.util.Collections;
-import java.util.EnumMap;
-import java.util.Map;
+import info.ata4.minecraft.dragon.server.util.DragonProfiler;
+import java.util.Arrays;
 import java.util.Objects;
-import java.util.concurrent.atomic.AtomicInteger;
-import net.minecraft.block.Block;
+import net.minecraft.block.state.IBlockState;
 import net.minecraft.nbt.NBTTagCompound;
 import net.minecraft.network.datasync.DataParameter;
 import net.minecraft.util.DamageSource;
 import net.minecraft.util.EnumParticleTypes;
 import net.minecraft.util.math.BlockPos;
-import net.minecraft.world.biome.Biome;
 import org.apache.commons.lang3.EnumUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -36,6 +34,7 @@ import org.apache.logging.log4j.Logger;
 public class DragonBreedHelper extends DragonHelper {
     
     private static final Logger L = LogManager.getLogger();
+    private static final EnumDragonBreed[] BREEDS = EnumDragonBreed.values();
     private static final int BLOCK_RANGE = 2;
     private static final int POINTS_INITIAL = 1000;
     private static final int POINTS_INHERIT = 1800;
@@ -44,67 +43,164 @@ public class DragonBreedHelper extends DragonHelper {
     private static final int POINTS_ENV = 3;
     private static final int TICK_RATE_PARTICLES = 2;
     private static final int TICK_RATE_BLOCK = 20;
-    private static final String NBT_BREED = "Breed";
-    private static final String NBT_BREED_POINTS = "breedPoints";
+    private static final int TICK_RATE_ENV = 1200;
+    private static final int TICK_RATE_RESCAN = 6000;
+    private static final String NBT_BREED = "BreedMeta";
+    private static final String NBT_BREED_POINTS = "BreedPoints";
+    private static final String NBT_INCUBATION_RATES = "IncubationRates";
+    
+    // old NBT keys
+    private static final String NBT_BREED_OLD = "Breed";
+    private static final String NBT_BREED_POINTS_OLD = "breedPoints";
 
-    private final DataParameter<String> dataParam;
-    private final Map<EnumDragonBreed, AtomicInteger> breedPoints = new EnumMap<>(EnumDragonBreed.class);
+    // the breed is synced as meta value and cached locally, since it's queried
+    // many times per tick by the renderer, sound manager and the helpers
+    private final DataParameter<Integer> dataParam;
+    private EnumDragonBreed breedType = EnumDragonBreed.DEFAULT;
+    
+    // breed points indexed by ordinal, points are only ever added while
+    // incubating, so the breed with the most points can be tracked on the fly
+    private final int[] breedPoints = new int[BREEDS.length];
+    private EnumDragonBreed dominantBreed = EnumDragonBreed.DEFAULT;
+    
+    // number of habitat blocks per breed around the egg, scanned once and then
+    // kept up to date by DragonHabitatWatcher
+    private final int[] habitatBlocks = new int[EnumDragonBreed.values().length];
+    private BlockPos habitatPos;
+    private BlockPos habitatMin;
+    private BlockPos habitatMax;
+    private boolean habitatComplete;
+    private long habitatScanTime;
+    
+    // breeds that like the biome and the environment at habitatPos, the
+    // environment is checked again after light or block changes in the window
+    private int habitatBiomeMask;
+    private int habitatEnvMask;
+    private long habitatEnvTime = -1;
+    
+    // world time of the last incubation update and the ticks that haven't
+    // been turned into points yet
+    private long incubationTime;
+    private long incubationTicks;
+    
+    // points per second from the last incubation update, the surrounding of
+    // an unloaded egg can't change, so these are used to catch up on reload
+    private final int[] incubationRates = new int[BREEDS.length];
+    
+    // hatchery queue state, see DragonHatchery
+    boolean incubationScheduled;
+    int incubationStaleEntries;
     
-    public DragonBreedHelper(EntityTameableDragon dragon, DataParameter<String> dataParam) {
+    public DragonBreedHelper(EntityTameableDragon dragon, DataParameter<Integer> dataParam) {
         super(dragon);
         
         this.dataParam = dataParam;
 
-        if (dragon.isServer()) {
-            // initialize map to avoid future checkings
-            for (EnumDragonBreed type : EnumDragonBreed.values()) {
-                breedPoints.put(type, new AtomicInteger());
-            }
-            
-            // default breed has initial points
-            breedPoints.get(EnumDragonBreed.DEFAULT).set(POINTS_INITIAL);
-        }
+        // default breed has initial points
+        breedPoints[EnumDragonBreed.DEFAULT.ordinal()] = POINTS_INITIAL;
         
-        dataWatcher.register(dataParam, EnumDragonBreed.DEFAULT.getName());
+        dataWatcher.register(dataParam, EnumDragonBreed.DEFAULT.getMeta());
     }
 
     @Override
     public void writeToNBT(NBTTagCompound nbt) {
-        nbt.setString(NBT_BREED, getBreedType().getName());
+        nbt.setInteger(NBT_BREED, getBreedType().getMeta());
+        
+        nbt.setIntArray(NBT_BREED_POINTS, toMetaArray(breedPoints));
         
-        NBTTagCompound breedPointTag = new NBTTagCompound();
-        breedPoints.forEach((type, points) -> {
-            breedPointTag.setInteger(type.getName(), points.get());
-        });
-        nbt.setTag(NBT_BREED_POINTS, breedPointTag);
+        if (dragon.isEgg()) {
+            nbt.setIntArray(NBT_INCUBATION_RATES, toMetaArray(incubationRates));
+        }
+    }
+    
+    // arrays are saved by breed meta, which stays the same across versions
+    private static int[] toMetaArray(int[] values) {
+        int[] metaValues = new int[BREEDS.length];
+        for (EnumDragonBreed type : BREEDS) {
+            metaValues[type.getMeta()] = values[type.ordinal()];
+        }
+        return metaValues;
+    }
+    
+    private static void fromMetaArray(int[] metaValues, int[] values) {
+        for (EnumDragonBreed type : BREEDS) {
+            int meta = type.getMeta();
+            values[type.ordinal()] = meta < metaValues.length ? metaValues[meta] : 0;
+        }
     }
 
     @Override
     public void readFromNBT(NBTTagCompound nbt) {
-        // read breed name and convert it to the corresponding breed object
-        String breedName = nbt.getString(NBT_BREED);
-        EnumDragonBreed breed = EnumUtils.getEnum(EnumDragonBreed.class, breedName.toUpperCase());
-        if (breed == null) {
-            breed = EnumDragonBreed.DEFAULT;
-            L.warn("Dragon {} loaded with invalid breed type {}, using {} instead",
-                    dragon.getEntityId(), breedName, breed);
+        EnumDragonBreed breed;
+        if (nbt.hasKey(NBT_BREED)) {
+            // read breed meta and convert it to the corresponding breed object
+            int breedMeta = nbt.getInteger(NBT_BREED);
+            breed = EnumDragonBreed.META_MAPPING.inverse().get(breedMeta);
+            if (breed == null) {
+                breed = EnumDragonBreed.DEFAULT;
+                L.warn("Dragon {} loaded with invalid breed meta {}, using {} instead",
+                        dragon.getEntityId(), breedMeta, breed);
+            }
+        } else {
+            // convert old breed name
+            String breedName = nbt.getString(NBT_BREED_OLD);
+            breed = EnumUtils.getEnum(EnumDragonBreed.class, breedName.toUpperCase());
+            if (breed == null) {
+                breed = EnumDragonBreed.DEFAULT;
+                L.warn("Dragon {} loaded with invalid breed type {}, using {} instead",
+                        dragon.getEntityId(), breedName, breed);
+            }
         }
         setBreedType(breed);
         
         // read breed points
-        NBTTagCompound breedPointTag = nbt.getCompoundTag(NBT_BREED_POINTS);
-        breedPoints.forEach((type, points) -> {
-            points.set(breedPointTag.getInteger(type.getName()));
-        });
+        if (nbt.hasKey(NBT_BREED_POINTS)) {
+            fromMetaArray(nbt.getIntArray(NBT_BREED_POINTS), breedPoints);
+        } else {
+            // convert old breed point compound
+            NBTTagCompound breedPointTag = nbt.getCompoundTag(NBT_BREED_POINTS_OLD);
+            for (EnumDragonBreed type : BREEDS) {
+                breedPoints[type.ordinal()] = breedPointTag.getInteger(type.getName());
+            }
+        }
+        
+        updateDominantBreed();
+        
+        fromMetaArray(nbt.getIntArray(NBT_INCUBATION_RATES), incubationRates);
+    }
+    
+    /**
+     * Returns the current breed points of a breed. Only maintained on the
+     * server side.
+     * 
+     * @param type breed type
+     * @return breed points
+     */
+    public int getBreedPoints(EnumDragonBreed type) {
+        return breedPoints[type.ordinal()];
     }
     
-    public Map<EnumDragonBreed, AtomicInteger> getBreedPoints() {
-        return Collections.unmodifiableMap(breedPoints);
+    private void addBreedPoints(EnumDragonBreed type, int points) {
+        int index = type.ordinal();
+        breedPoints[index] += points;
+        
+        // ties are kept by the current breed
+        if (breedPoints[index] > breedPoints[dominantBreed.ordinal()]) {
+            dominantBreed = type;
+        }
+    }
+    
+    private void updateDominantBreed() {
+        dominantBreed = BREEDS[0];
+        for (EnumDragonBreed type : BREEDS) {
+            if (breedPoints[type.ordinal()] > breedPoints[dominantBreed.ordinal()]) {
+                dominantBreed = type;
+            }
+        }
     }
     
     public EnumDragonBreed getBreedType() {
-        String breedName = dataWatcher.get(dataParam);
-        return EnumUtils.getEnum(EnumDragonBreed.class, breedName.toUpperCase());
+        return breedType;
     }
     
     public void setBreedType(EnumDragonBreed newType) {
@@ -135,18 +231,41 @@ public class DragonBreedHelper extends DragonHelper {
                 || newBreed.isImmuneToDamage(DamageSource.onFire)
                 || newBreed.isImmuneToDamage(DamageSource.lava));
         
-        // update breed name
-        dataWatcher.set(dataParam, newType.getName());
+        // update breed and notify client
+        breedType = newType;
+        dataWatcher.set(dataParam, newType.getMeta());
         
         // reset breed points
         if (dragon.isEgg()) {
-            breedPoints.values().forEach(points -> points.set(0));
-            breedPoints.get(newType).set(POINTS_INITIAL);
+            Arrays.fill(breedPoints, 0);
+            breedPoints[newType.ordinal()] = POINTS_INITIAL;
+            dominantBreed = newType;
+        }
+        
+        // the tasks may depend on the breed, may be called before the brain
+        // exists when reading NBT data
+        DragonBrain brain = dragon.getBrain();
+        if (brain != null) {
+            brain.onBreedChange();
         }
     }
     
     @Override
-    public void onLivingUpdate() {
+    public void notifyDataManagerChange(DataParameter<?> key) {
+        if (!dataParam.equals(key)) {
+            return;
+        }
+        
+        // refresh cached breed, which is the only way for the client to
+        // receive breed updates
+        EnumDragonBreed newType = EnumDragonBreed.META_MAPPING.inverse().get(dataWatcher.get(dataParam));
+        if (newType != null) {
+            breedType = newType;
+        }
+    }
+    
+    @Override
+    public void onLivingUpdate(int ticks) {
         EnumDragonBreed currentType = getBreedType();
         
         if (dragon.isEgg()) {
@@ -162,59 +281,231 @@ public class DragonBreedHelper extends DragonHelper {
                 }
             }
 
-            // update egg breed every second on the server
+            // update egg breed every second on the server, the actual work is
+            // done by the hatchery to batch eggs that are close to each other
             if (dragon.isServer() && dragon.ticksExisted % TICK_RATE_BLOCK == 0) {
-                BlockPos eggPos = dragon.getPosition();
-                
-                // scan surrounding for breed-loving blocks
-                BlockPos eggPosFrom = eggPos.add(BLOCK_RANGE, BLOCK_RANGE, BLOCK_RANGE);
-                BlockPos eggPosTo = eggPos.add(-BLOCK_RANGE, -BLOCK_RANGE, -BLOCK_RANGE);
-                
-                BlockPos.getAllInBoxMutable(eggPosFrom, eggPosTo).forEach(blockPos -> {
-                    Block block = dragon.worldObj.getBlockState(blockPos).getBlock();
-                    breedPoints.entrySet().stream()
-                        .filter(breed -> (breed.getKey().getBreed().isHabitatBlock(block)))
-                        .forEach(breed -> breed.getValue().addAndGet(POINTS_BLOCK));
-                });
-
-                // check biome
-                Biome biome = dragon.worldObj.getBiome(eggPos);
+                DragonHatchery.forWorld(dragon.worldObj).schedule(this);
+            }
+        } else if (habitatPos != null) {
+            // hatched, surrounding blocks don't matter anymore
+            stopHabitatWatch();
+        }
+        
+        long profileStart = DragonProfiler.begin();
+        currentType.getBreed().onUpdate(dragon, ticks);
+        DragonProfiler.end(dragon.worldObj, "breed.onUpdate", profileStart);
+    }
 
-                breedPoints.keySet().forEach(breed -> {
-                    // check for biomes
-                    if (breed.getBreed().isHabitatBiome(biome)) {
-                        breedPoints.get(breed).addAndGet(POINTS_BIOME);
-                    }
+    /**
+     * Returns true if the egg is still alive, loaded and hasn't hatched yet.
+     */
+    boolean isIncubating() {
+        // chunk unloads don't kill the entity, but remove it from the world
+        return !dragon.isDead && dragon.isEgg()
+                && dragon.worldObj.getEntityByID(dragon.getEntityId()) == dragon;
+    }
+    
+    /**
+     * Returns true if the habitat blocks around the egg need to be counted.
+     * This is the case for new eggs, eggs that have been moved and eggs
+     * whose surrounding wasn't fully loaded on the last scan. The counts are
+     * also refreshed every few minutes to catch block changes that were made
+     * without notifying the world listeners.
+     */
+    boolean needsHabitatScan() {
+        return !habitatComplete || !dragon.getPosition().equals(habitatPos)
+                || dragon.worldObj.getTotalWorldTime() - habitatScanTime >= TICK_RATE_RESCAN;
+    }
+    
+    /**
+     * Returns the minimum corner of the habitat window at the current position.
+     */
+    BlockPos getHabitatScanMin() {
+        return dragon.getPosition().add(-BLOCK_RANGE, -BLOCK_RANGE, -BLOCK_RANGE);
+    }
+    
+    /**
+     * Returns the maximum corner of the habitat window at the current position.
+     */
+    BlockPos getHabitatScanMax() {
+        return dragon.getPosition().add(BLOCK_RANGE, BLOCK_RANGE, BLOCK_RANGE);
+    }
+    
+    /**
+     * Sets the habitat counts from a scanned box that contains the habitat
+     * window and starts watching the window for block changes.
+     */
+    void applyHabitatScan(int[] masks, BlockPos boxMin, BlockPos boxMax, boolean complete) {
+        stopHabitatWatch();
+        
+        habitatPos = dragon.getPosition();
+        habitatMin = getHabitatScanMin();
+        habitatMax = getHabitatScanMax();
+        
+        Arrays.fill(habitatBlocks, 0);
+        DragonHabitatScanner.countMasks(masks, boxMin, boxMax, habitatMin, habitatMax, habitatBlocks);
+        
+        // scan again later if parts of the window weren't loaded
+        habitatComplete = complete;
+        habitatScanTime = dragon.worldObj.getTotalWorldTime();
+        
+        // the biome won't change as long as the egg stays here
+        habitatBiomeMask = DragonHabitatTable.getBiomeMask(dragon.worldObj.getBiome(habitatPos));
+        habitatEnvTime = -1;
+        
+        DragonHabitatWatcher.forWorld(dragon.worldObj).add(this, habitatMin, habitatMax);
+    }
+    
+    /**
+     * Adds the breed points for the time since the last call and switches to
+     * the most dominant breed. Called by the hatchery about once per second.
+     */
+    void updateIncubation() {
+        long time = dragon.worldObj.getTotalWorldTime();
+        if (incubationTime == 0) {
+            incubationTime = time - TICK_RATE_BLOCK;
+        }
+        
+        // collect the elapsed ticks, the hatchery may process eggs a bit late
+        incubationTicks += time - incubationTime;
+        incubationTime = time;
+        
+        int seconds = (int) (incubationTicks / TICK_RATE_BLOCK);
+        incubationTicks %= TICK_RATE_BLOCK;
+        if (seconds <= 0) {
+            return;
+        }
+        
+        // the hatchery scans new eggs before updating them, so this only
+        // happens if the egg has been removed in the meantime
+        if (habitatPos == null) {
+            return;
+        }
+        
+        // environments may also depend on things that aren't tracked, so
+        // check them once in a while even if nothing changed
+        if (habitatEnvTime < 0 || time - habitatEnvTime >= TICK_RATE_ENV) {
+            habitatEnvMask = 0;
+            for (EnumDragonBreed type : BREEDS) {
+                if (type.getBreed().isHabitatEnvironment(dragon)) {
+                    habitatEnvMask |= 1 << type.ordinal();
+                }
+            }
+            habitatEnvTime = time;
+        }
+        
+        for (EnumDragonBreed type : BREEDS) {
+            int bit = 1 << type.ordinal();
+            
+            // points for breed-loving blocks in the surrounding
+            int points = habitatBlocks[type.ordinal()] * POINTS_BLOCK;
+            
+            // check for biomes
+            if ((habitatBiomeMask & bit) != 0) {
+                points += POINTS_BIOME;
+            }
 
-                    // extra points for good environments
-                    if (breed.getBreed().isHabitatEnvironment(dragon)) {
-                        breedPoints.get(breed).addAndGet(POINTS_ENV);
-                    }
-                });
+            // extra points for good environments
+            if ((habitatEnvMask & bit) != 0) {
+                points += POINTS_ENV;
+            }
+            
+            incubationRates[type.ordinal()] = points;
+            
+            if (points != 0) {
+                addBreedPoints(type, points * seconds);
+            }
+        }
 
-                // update most dominant breed
-                EnumDragonBreed newType = breedPoints.entrySet().stream()
-                    .max((breed1, breed2) -> Integer.compare(
-                            breed1.getValue().get(),
-                            breed2.getValue().get()))
-                    .get().getKey();
-                
-                if (newType != currentType) {
-                    setBreedType(newType);
-                }
+        // update most dominant breed
+        if (dominantBreed != getBreedType()) {
+            setBreedType(dominantBreed);
+        }
+    }
+    
+    /**
+     * Adds the breed points for the time the egg wasn't loaded in one step,
+     * using the rates from the last update before it was unloaded. Called by
+     * the life stage helper after loading.
+     * 
+     * @param ticks incubation ticks that have passed while unloaded
+     */
+    void catchUpIncubation(long ticks) {
+        // continue regular updates from now on
+        incubationTime = dragon.worldObj.getTotalWorldTime();
+        
+        long seconds = ticks / TICK_RATE_BLOCK;
+        if (seconds <= 0) {
+            return;
+        }
+        
+        for (EnumDragonBreed type : BREEDS) {
+            int rate = incubationRates[type.ordinal()];
+            if (rate != 0) {
+                addBreedPoints(type, (int) Math.min(rate * seconds, Integer.MAX_VALUE));
             }
         }
         
-        currentType.getBreed().onUpdate(dragon);
+        if (dominantBreed != getBreedType()) {
+            setBreedType(dominantBreed);
+        }
     }
-
+    
+    /**
+     * Called by DragonHabitatWatcher when a block in the chunks around the egg
+     * has been replaced.
+     */
+    void onHabitatBlockChange(BlockPos pos, IBlockState oldState, IBlockState newState) {
+        if (pos.getX() < habitatMin.getX() || pos.getX() > habitatMax.getX()
+                || pos.getY() < habitatMin.getY() || pos.getY() > habitatMax.getY()
+                || pos.getZ() < habitatMin.getZ() || pos.getZ() > habitatMax.getZ()) {
+            return;
+        }
+        
+        DragonHabitatTable.accumulate(DragonHabitatTable.getBlockMask(oldState.getBlock()), habitatBlocks, -1);
+        DragonHabitatTable.accumulate(DragonHabitatTable.getBlockMask(newState.getBlock()), habitatBlocks, 1);
+        
+        // new blocks may cover the egg or change the light level
+        habitatEnvTime = -1;
+    }
+    
+    /**
+     * Called by DragonHabitatWatcher when the light level of a block in the
+     * chunks around the egg has changed.
+     */
+    void onHabitatLightChange(BlockPos pos) {
+        if (pos.getX() < habitatMin.getX() || pos.getX() > habitatMax.getX()
+                || pos.getY() < habitatMin.getY() || pos.getY() > habitatMax.getY()
+                || pos.getZ() < habitatMin.getZ() || pos.getZ() > habitatMax.getZ()) {
+            return;
+        }
+        
+        habitatEnvTime = -1;
+    }
+    
+    /**
+     * Stops block change tracking for this egg. The surrounding is scanned
+     * again on the next habitat update.
+     */
+    void stopHabitatWatch() {
+        if (habitatPos != null) {
+            DragonHabitatWatcher.forWorld(dragon.worldObj).remove(this, habitatMin, habitatMax);
+            habitatPos = null;
+            habitatMin = null;
+            habitatMax = null;
+        }
+        habitatComplete = false;
+        habitatEnvTime = -1;
+    }
+    
     @Override
     public void onDeath() {
+        stopHabitatWatch();
         getBreedType().getBreed().onDeath(dragon);
     }
     
     public void inheritBreed(EntityTameableDragon parent1, EntityTameableDragon parent2) {
-        breedPoints.get(parent1.getBreedType()).addAndGet(POINTS_INHERIT + rand.nextInt(POINTS_INHERIT));
-        breedPoints.get(parent2.getBreedType()).addAndGet(POINTS_INHERIT + rand.nextInt(POINTS_INHERIT));
+        addBreedPoints(parent1.getBreedType(), POINTS_INHERIT + rand.nextInt(POINTS_INHERIT));
+        addBreedPoints(parent2.getBreedType(), POINTS_INHERIT + rand.nextInt(POINTS_INHERIT));
     }
 }
@@ -0,0 +1,195 @@
+/*
+ ** 2016 August 30
+ **
+ ** The author disclaims copyright to this source code.  In place of
+ ** a legal notice, here is a blessing:
+ **    May you do good and not evil.
+ **    May you find forgiveness for yourself and forgive others.
+ **    May you share freely, never taking more than you give.
+ */
+package info.ata4.minecraft.dragon.server.entity.helper;
+
+import info.ata4.minecraft.dragon.server.entity.breeds.DragonHabitatTable;
+import info.ata4.minecraft.dragon.util.reflection.PrivateAccessor;
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+import net.minecraft.world.chunk.BlockStateContainer;
+import net.minecraft.world.chunk.BlockStatePaletteRegistry;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.IBlockStatePalette;
+import net.minecraft.world.chunk.storage.ExtendedBlockStorage;
+import net.minecraftforge.fml.relauncher.ReflectionHelper;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Classifies habitat blocks in a box by reading the chunk sections directly.
+ * Sections that are empty or whose block palette doesn't contain any habitat
+ * block are skipped without looking at single blocks.
+ * 
+ * @author Nico Bergemann <barracuda415 at yahoo.de>
+ */
+public class DragonHabitatScanner {
+    
+    private static final Logger L = LogManager.getLogger();
+    
+    // palette field of the block state containers, resolved only once since
+    // it's read for every section of every scan, null if it's not accessible
+    private static Field paletteField = findPaletteField();
+    
+    private DragonHabitatScanner() {
+        // static utility class
+    }
+    
+    /**
+     * Stores the breed masks of all blocks in the given box into an array,
+     * ordered by y, z and x. Blocks in skipped sections have a mask of 0.
+     * 
+     * @param world world to scan
+     * @param from minimum corner, inclusive
+     * @param to maximum corner, inclusive
+     * @param masks target array, at least as large as the box volume
+     * @return true if all chunks in the box were loaded and scanned
+     */
+    public static boolean scanMasks(World world, BlockPos from, BlockPos to, int[] masks) {
+        int sizeX = to.getX() - from.getX() + 1;
+        int sizeZ = to.getZ() - from.getZ() + 1;
+        int volume = sizeX * (to.getY() - from.getY() + 1) * sizeZ;
+        Arrays.fill(masks, 0, volume, 0);
+        
+        int minX = from.getX();
+        int minY = Math.max(from.getY(), 0);
+        int minZ = from.getZ();
+        int maxX = to.getX();
+        int maxY = Math.min(to.getY(), world.getHeight() - 1);
+        int maxZ = to.getZ();
+        boolean complete = true;
+        
+        for (int cx = minX >> 4; cx <= maxX >> 4; cx++) {
+            for (int cz = minZ >> 4; cz <= maxZ >> 4; cz++) {
+                // don't load chunks just for counting blocks
+                Chunk chunk = world.getChunkProvider().getLoadedChunk(cx, cz);
+                if (chunk == null) {
+                    complete = false;
+                    continue;
+                }
+                
+                ExtendedBlockStorage[] sections = chunk.getBlockStorageArray();
+                
+                for (int cy = minY >> 4; cy <= maxY >> 4; cy++) {
+                    ExtendedBlockStorage section = sections[cy];
+                    if (section == null || section.isEmpty()) {
+                        continue;
+                    }
+                    
+                    if (!mayContainHabitat(section.getData())) {
+                        continue;
+                    }
+                    
+                    // intersection of box and section
+                    int x0 = Math.max(minX, cx << 4);
+                    int x1 = Math.min(maxX, (cx << 4) + 15);
+                    int y0 = Math.max(minY, cy << 4);
+                    int y1 = Math.min(maxY, (cy << 4) + 15);
+                    int z0 = Math.max(minZ, cz << 4);
+                    int z1 = Math.min(maxZ, (cz << 4) + 15);
+                    
+                    for (int y = y0; y <= y1; y++) {
+                        for (int z = z0; z <= z1; z++) {
+                            int index = ((y - from.getY()) * sizeZ + (z - minZ)) * sizeX + (x0 - minX);
+                            for (int x = x0; x <= x1; x++, index++) {
+                                IBlockState state = section.get(x & 15, y & 15, z & 15);
+                                masks[index] = DragonHabitatTable.getBlockMask(state.getBlock());
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        
+        return complete;
+    }
+    
+    /**
+     * Counts the habitat blocks per breed for a window inside a box that was
+     * scanned with scanMasks().
+     * 
+     * @param masks scanned breed masks
+     * @param from minimum corner of the scanned box
+     * @param to maximum corner of the scanned box
+     * @param windowFrom minimum corner of the window, inside the box
+     * @param windowTo maximum corner of the window, inside the box
+     * @param counts counters indexed by breed ordinal
+     */
+    public static void countMasks(int[] masks, BlockPos from, BlockPos to,
+            BlockPos windowFrom, BlockPos windowTo, int[] counts) {
+        int sizeX = to.getX() - from.getX() + 1;
+        int sizeZ = to.getZ() - from.getZ() + 1;
+        
+        for (int y = windowFrom.getY(); y <= windowTo.getY(); y++) {
+            for (int z = windowFrom.getZ(); z <= windowTo.getZ(); z++) {
+                int index = ((y - from.getY()) * sizeZ + (z - from.getZ())) * sizeX
+                        + (windowFrom.getX() - from.getX());
+                for (int x = windowFrom.getX(); x <= windowTo.getX(); x++, index++) {
+                    int mask = masks[index];
+                    if (mask != 0) {
+                        DragonHabitatTable.accumulate(mask, counts, 1);
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * Checks the palette of a section for habitat blocks.
+     * 
+     * @param data section block data
+     * @return false if the section is guaranteed to contain no habitat block
+     */
+    private static boolean mayContainHabitat(BlockStateContainer data) {
+        IBlockStatePalette palette = getPalette(data);
+        
+        // the global palette can't be checked in reasonable time
+        if (palette == null || palette instanceof BlockStatePaletteRegistry) {
+            return true;
+        }
+        
+        // local palettes use continuous IDs starting at zero
+        IBlockState state;
+        for (int i = 0; (state = palette.getBlockState(i)) != null; i++) {
+            if (DragonHabitatTable.getBlockMask(state.getBlock()) != 0) {
+                return true;
+            }
+        }
+        
+        return false;
+    }
+    
+    private static Field findPaletteField() {
+        try {
+            return ReflectionHelper.findField(BlockStateContainer.class,
+                    PrivateAccessor.BLOCKSTATECONTAINER_PALETTE);
+        } catch (RuntimeException ex) {
+            // still works, just without skipping sections by palette
+            L.warn("Can't access block state palettes, using full section scans", ex);
+            return null;
+        }
+    }
+    
+    private static IBlockStatePalette getPalette(BlockStateContainer data) {
+        if (paletteField == null) {
+            return null;
+        }
+        
+        try {
+            return (IBlockStatePalette) paletteField.get(data);
+        } catch (IllegalAccessException ex) {
+            L.warn("Can't access block state palettes, using full section scans", ex);
+            paletteField = null;
+            return null;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ ** 2016 August 31
+ **
+ ** The author disclaims copyright to this source code.  In place of
+ ** a legal notice, here is a blessing:
+ **    May you do good and not evil.
+ **    May you find forgiveness for yourself and forgive others.
+ **    May you share freely, never taking more than you give.
+ */
+package info.ata4.minecraft.dragon.server.entity.helper;
+
+import info.ata4.minecraft.dragon.server.entity.EntityTameableDragon;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.player.EntityPlayer;
+import net.minecraft.util.SoundCategory;
+import net.minecraft.util.SoundEvent;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.IWorldEventListener;
+import net.minecraft.world.World;
+
+/**
+ * World listener that forwards block and light changes to incubating eggs whose
+ * habitat window contains the changed block, so the eggs don't need to rescan
+ * their surroundings every second.
+ * <p>
+ * The world only notifies listeners about block changes made with flag 2, so
+ * changes made without it are only picked up by the slow periodic rescan of
+ * the eggs.
+ * 
+ * @author Nico Bergemann <barracuda415 at yahoo.de>
+ */
+public class DragonHabitatWatcher implements IWorldEventListener {
+    
+    private static final Map<World, DragonHabitatWatcher> WATCHERS = new WeakHashMap<>();
+    
+    /**
+     * Returns the watcher for a server world, creating and attaching it if
+     * required.
+     * 
+     * @param world server world
+     * @return habitat watcher
+     */
+    public static DragonHabitatWatcher forWorld(World world) {
+        DragonHabitatWatcher watcher = WATCHERS.get(world);
+        if (watcher == null) {
+            watcher = new DragonHabitatWatcher();
+            world.addEventListener(watcher);
+            WATCHERS.put(world, watcher);
+        }
+        return watcher;
+    }
+    
+    private static long chunkKey(int chunkX, int chunkZ) {
+        return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+    }
+    
+    // eggs by the chunks their windows overlap
+    private final Map<Long, List<DragonBreedHelper>> chunkEggs = new HashMap<>();
+    
+    private DragonHabitatWatcher() {
+    }
+    
+    /**
+     * Starts forwarding block changes inside the window to the egg.
+     * 
+     * @param egg breed helper of the egg
+     * @param min minimum corner of the window
+     * @param max maximum corner of the window
+     */
+    public void add(DragonBreedHelper egg, BlockPos min, BlockPos max) {
+        for (int cx = min.getX() >> 4; cx <= max.getX() >> 4; cx++) {
+            for (int cz = min.getZ() >> 4; cz <= max.getZ() >> 4; cz++) {
+                List<DragonBreedHelper> eggs = chunkEggs.computeIfAbsent(
+                        chunkKey(cx, cz), key -> new ArrayList<>());
+                if (!eggs.contains(egg)) {
+                    eggs.add(egg);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Stops forwarding block changes to the egg.
+     * 
+     * @param egg breed helper of the egg
+     * @param min minimum corner of the window
+     * @param max maximum corner of the window
+     */
+    public void remove(DragonBreedHelper egg, BlockPos min, BlockPos max) {
+        for (int cx = min.getX() >> 4; cx <= max.getX() >> 4; cx++) {
+            for (int cz = min.getZ() >> 4; cz <= max.getZ() >> 4; cz++) {
+                Long key = chunkKey(cx, cz);
+                List<DragonBreedHelper> eggs = chunkEggs.get(key);
+                if (eggs != null) {
+                    eggs.remove(egg);
+                    if (eggs.isEmpty()) {
+                        chunkEggs.remove(key);
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void notifyBlockUpdate(World worldIn, BlockPos pos, IBlockState oldState, IBlockState newState, int flags) {
+        // habitats are defined per block, ignore state changes
+        if (oldState.getBlock() == newState.getBlock()) {
+            return;
+        }
+        
+        List<DragonBreedHelper> eggs = chunkEggs.get(chunkKey(pos.getX() >> 4, pos.getZ() >> 4));
+        if (eggs == null) {
+            return;
+        }
+        
+        for (DragonBreedHelper egg : eggs) {
+            egg.onHabitatBlockChange(pos, oldState, newState);
+        }
+    }
+
+    @Override
+    public void onEntityRemoved(Entity entityIn) {
+        // also called on chunk unloads
+        if (entityIn instanceof EntityTameableDragon) {
+            ((EntityTameableDragon) entityIn).getBreedHelper().stopHabitatWatch();
+        }
+    }
+
+    @Override
+    public void notifyLightSet(BlockPos pos) {
+        List<DragonBreedHelper> eggs = chunkEggs.get(chunkKey(pos.getX() >> 4, pos.getZ() >> 4));
+        if (eggs == null) {
+            return;
+        }
+        
+        for (DragonBreedHelper egg : eggs) {
+            egg.onHabitatLightChange(pos);
+        }
+    }
+
+    @Override
+    public void markBlockRangeForRenderUpdate(int x1, int y1, int z1, int x2, int y2, int z2) {
+    }
+
+    @Override
+    public void playSoundToAllNearExcept(EntityPlayer player, SoundEvent soundIn, SoundCategory category, double x, double y, double z, float volume, float pitch) {
+    }
+
+    @Override
+    public void playRecord(SoundEvent soundIn, BlockPos pos) {
+    }
+
+    @Override
+    public void spawnParticle(int particleID, boolean ignoreRange, double xCoord, double yCoord, double zCoord, double xSpeed, double ySpeed, double zSpeed, int... parameters) {
+    }
+
+    @Override
+    public void onEntityAdded(Entity entityIn) {
+    }
+
+    @Override
+    public void broadcastSound(int soundID, BlockPos pos, int data) {
+    }
+
+    @Override
+    public void playEvent(EntityPlayer player, int type, BlockPos blockPosIn, int data) {
+    }
+
+    @Override
+    public void sendBlockBreakProgress(int breakerId, BlockPos pos, int progress) {
+    }
+}
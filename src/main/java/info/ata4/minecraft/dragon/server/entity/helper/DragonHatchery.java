@@ -0,0 +1,255 @@
+/*
+ ** 2016 September 01
+ **
+ ** The author disclaims copyright to this source code.  In place of
+ ** a legal notice, here is a blessing:
+ **    May you do good and not evil.
+ **    May you find forgiveness for yourself and forgive others.
+ **    May you share freely, never taking more than you give.
+ */
+package info.ata4.minecraft.dragon.server.entity.helper;
+
+import info.ata4.minecraft.dragon.server.util.DragonFlightRecorder;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+
+/**
+ * Per-world incubation manager. Eggs schedule themselves once per second and
+ * are processed together at the end of the world tick. Eggs that need a
+ * habitat scan are grouped by overlapping windows so every block is only
+ * classified once per group. A time budget spreads large batches over
+ * several ticks.
+ * 
+ * @author Nico Bergemann <barracuda415 at yahoo.de>
+ */
+public class DragonHatchery {
+    
+    private static final Map<World, DragonHatchery> HATCHERIES = new WeakHashMap<>();
+    
+    // maximum time per tick, remaining eggs are processed on the next tick
+    private static final long TICK_BUDGET_NANOS = 1_000_000;
+    
+    // maximum edge length of a group box, larger groups are split
+    private static final int MAX_GROUP_SIZE = 32;
+    
+    /**
+     * Returns the hatchery for a server world, creating it if required.
+     * 
+     * @param world server world
+     * @return hatchery
+     */
+    public static DragonHatchery forWorld(World world) {
+        return HATCHERIES.computeIfAbsent(world, w -> new DragonHatchery());
+    }
+    
+    /**
+     * Returns the hatchery for a world if there is one.
+     * 
+     * @param world world
+     * @return hatchery or null
+     */
+    public static DragonHatchery get(World world) {
+        return HATCHERIES.get(world);
+    }
+    
+    /**
+     * Drops the hatchery of an unloaded world.
+     * 
+     * @param world world
+     */
+    public static void remove(World world) {
+        HATCHERIES.remove(world);
+    }
+    
+    private final Deque<DragonBreedHelper> queue = new ArrayDeque<>();
+    private final List<DragonBreedHelper> batch = new ArrayList<>();
+    private final List<DragonBreedHelper> group = new ArrayList<>();
+    private int[] masks = new int[0];
+    
+    private DragonHatchery() {
+    }
+    
+    /**
+     * Schedules an incubation update for an egg.
+     * 
+     * @param egg breed helper of the egg
+     */
+    public void schedule(DragonBreedHelper egg) {
+        if (!egg.incubationScheduled) {
+            egg.incubationScheduled = true;
+            queue.add(egg);
+        }
+    }
+    
+    /**
+     * Processes scheduled eggs until the queue is empty or the tick budget is
+     * used up.
+     * 
+     * @param world world of this hatchery
+     */
+    public void tick(World world) {
+        if (queue.isEmpty()) {
+            return;
+        }
+        
+        long deadline = System.nanoTime() + TICK_BUDGET_NANOS;
+        
+        // always process at least one egg so the queue can't get stuck
+        do {
+            takeBatch();
+            
+            scanHabitats(world);
+            
+            for (DragonBreedHelper egg : batch) {
+                egg.updateIncubation();
+            }
+            
+            batch.clear();
+        } while (!queue.isEmpty() && System.nanoTime() < deadline);
+    }
+    
+    /**
+     * Takes the next egg from the queue together with all queued eggs that
+     * can share a habitat scan with it.
+     */
+    private void takeBatch() {
+        DragonBreedHelper first = pollIncubating();
+        if (first == null) {
+            return;
+        }
+        
+        batch.add(first);
+        
+        // eggs with valid habitat counts don't need a group
+        if (!first.needsHabitatScan()) {
+            return;
+        }
+        
+        BlockPos min = first.getHabitatScanMin();
+        BlockPos max = first.getHabitatScanMax();
+        
+        // collect other eggs in the queue that overlap the group box
+        for (DragonBreedHelper egg : queue) {
+            if (!egg.incubationScheduled || !egg.isIncubating() || !egg.needsHabitatScan()) {
+                continue;
+            }
+            
+            BlockPos eggMin = egg.getHabitatScanMin();
+            BlockPos eggMax = egg.getHabitatScanMax();
+            
+            if (!intersects(min, max, eggMin, eggMax)) {
+                continue;
+            }
+            
+            BlockPos unionMin = new BlockPos(
+                Math.min(min.getX(), eggMin.getX()),
+                Math.min(min.getY(), eggMin.getY()),
+                Math.min(min.getZ(), eggMin.getZ())
+            );
+            BlockPos unionMax = new BlockPos(
+                Math.max(max.getX(), eggMax.getX()),
+                Math.max(max.getY(), eggMax.getY()),
+                Math.max(max.getZ(), eggMax.getZ())
+            );
+            
+            if (unionMax.getX() - unionMin.getX() >= MAX_GROUP_SIZE
+                    || unionMax.getY() - unionMin.getY() >= MAX_GROUP_SIZE
+                    || unionMax.getZ() - unionMin.getZ() >= MAX_GROUP_SIZE) {
+                continue;
+            }
+            
+            min = unionMin;
+            max = unionMax;
+            batch.add(egg);
+            
+            // removing the egg from the middle of the queue would be slow,
+            // its entry is skipped when it's polled instead
+            egg.incubationScheduled = false;
+            egg.incubationStaleEntries++;
+        }
+    }
+    
+    private DragonBreedHelper pollIncubating() {
+        DragonBreedHelper egg;
+        while ((egg = queue.poll()) != null) {
+            // skip entries of eggs that were processed in a group already
+            if (egg.incubationStaleEntries > 0) {
+                egg.incubationStaleEntries--;
+                continue;
+            }
+            
+            egg.incubationScheduled = false;
+            if (egg.isIncubating()) {
+                return egg;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Scans the union of the habitat windows of all eggs in the batch that
+     * need a scan once and hands the result to each of them.
+     */
+    private void scanHabitats(World world) {
+        group.clear();
+        for (DragonBreedHelper egg : batch) {
+            if (egg.needsHabitatScan()) {
+                group.add(egg);
+            }
+        }
+        
+        if (group.isEmpty()) {
+            return;
+        }
+        
+        BlockPos min = group.get(0).getHabitatScanMin();
+        BlockPos max = group.get(0).getHabitatScanMax();
+        for (DragonBreedHelper egg : group) {
+            BlockPos eggMin = egg.getHabitatScanMin();
+            BlockPos eggMax = egg.getHabitatScanMax();
+            min = new BlockPos(
+                Math.min(min.getX(), eggMin.getX()),
+                Math.min(min.getY(), eggMin.getY()),
+                Math.min(min.getZ(), eggMin.getZ())
+            );
+            max = new BlockPos(
+                Math.max(max.getX(), eggMax.getX()),
+                Math.max(max.getY(), eggMax.getY()),
+                Math.max(max.getZ(), eggMax.getZ())
+            );
+        }
+        
+        int volume = (max.getX() - min.getX() + 1)
+                * (max.getY() - min.getY() + 1)
+                * (max.getZ() - min.getZ() + 1);
+        if (masks.length < volume) {
+            masks = new int[volume];
+        }
+        
+        Object event = DragonFlightRecorder.HABITAT_SCAN.begin();
+        
+        boolean complete = DragonHabitatScanner.scanMasks(world, min, max, masks);
+        
+        if (event != null) {
+            DragonFlightRecorder.HABITAT_SCAN.commit(event, group.size(), volume, complete);
+        }
+        
+        for (DragonBreedHelper egg : group) {
+            egg.applyHabitatScan(masks, min, max, complete);
+        }
+        
+        group.clear();
+    }
+    
+    private static boolean intersects(BlockPos min1, BlockPos max1, BlockPos min2, BlockPos max2) {
+        return min1.getX() <= max2.getX() && max1.getX() >= min2.getX()
+                && min1.getY() <= max2.getY() && max1.getY() >= min2.getY()
+                && min1.getZ() <= max2.getZ() && max1.getZ() >= min2.getZ();
+    }
+}
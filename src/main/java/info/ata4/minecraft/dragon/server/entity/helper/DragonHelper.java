@@ -13,6 +13,7 @@ import info.ata4.minecraft.dragon.server.entity.EntityTameableDragon;
 import net.minecraft.nbt.NBTTagCompound;
 
 import java.util.Random;
+import net.minecraft.network.datasync.DataParameter;
 import net.minecraft.network.datasync.EntityDataManager;
 
 /**
@@ -31,10 +32,30 @@ public abstract class DragonHelper {
         this.rand = dragon.getRNG();
     }
     
+    /**
+     * Returns the number of ticks between two calls of onLivingUpdate(int).
+     * Helpers that don't need an update on every tick can override this to be
+     * skipped on the off ticks. A value of 0 disables the updates entirely.
+     * 
+     * @return tick rate
+     */
+    public int getTickRate() {
+        return 1;
+    }
+    
     public void writeToNBT(NBTTagCompound nbt) {}
     public void readFromNBT(NBTTagCompound nbt) {}
     public void applyEntityAttributes() {}
-    public void onLivingUpdate() {}
+    
+    /**
+     * Called on each update tick of the helper.
+     * 
+     * @param ticks ticks since the last update, which is more than the tick
+     * rate if updates were skipped by the level of detail
+     */
+    public void onLivingUpdate(int ticks) {}
+    
     public void onDeathUpdate() {}
     public void onDeath() {}
+    public void notifyDataManagerChange(DataParameter<?> key) {}
 }
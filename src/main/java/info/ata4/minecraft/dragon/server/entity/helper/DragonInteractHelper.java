@@ -34,6 +34,12 @@ public class DragonInteractHelper extends DragonHelper {
         actions.add(new DragonInteractRide(dragon));
     }
     
+    @Override
+    public int getTickRate() {
+        // interactions are event-based
+        return 0;
+    }
+    
     public boolean interact(EntityPlayer player, ItemStack item) {
         return actions.stream().anyMatch(action -> action.interact(player, item));
     }
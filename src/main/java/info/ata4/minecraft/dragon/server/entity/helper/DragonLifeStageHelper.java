@@ -12,7 +12,9 @@ package info.ata4.minecraft.dragon.server.entity.helper;
 import info.ata4.minecraft.dragon.server.block.BlockDragonBreedEgg;
 import info.ata4.minecraft.dragon.server.entity.EntityTameableDragon;
 import static info.ata4.minecraft.dragon.server.entity.helper.EnumDragonLifeStage.*;
-import info.ata4.minecraft.dragon.server.util.ClientServerSynchronisedTickCount;
+import info.ata4.minecraft.dragon.server.util.DragonFlightRecorder;
+import java.util.ArrayList;
+import java.util.List;
 import net.minecraft.block.Block;
 import static net.minecraft.entity.SharedMonsterAttributes.ATTACK_DAMAGE;
 import static net.minecraft.entity.SharedMonsterAttributes.MAX_HEALTH;
@@ -37,49 +39,75 @@ public class DragonLifeStageHelper extends DragonHelper {
     private static final Logger L = LogManager.getLogger();
     
     private static final String NBT_TICKS_SINCE_CREATION = "TicksSinceCreation";
-    private static final int TICKS_SINCE_CREATION_UPDATE_INTERVAL = 100;
+    private static final String NBT_LAST_TICK_TIME = "LastTickTime";
+    
+    // adult birth times are moved forward before the int age overflows
+    private static final int BIRTH_TIME_REBASE_TICKS = 1 << 30;
     private static final float EGG_CRACK_THRESHOLD = 0.9f;
     private static final float EGG_WIGGLE_THRESHOLD = 0.75f;
     private static final float EGG_WIGGLE_BASE_CHANCE = 20;
     
+    // size and attribute changes are only applied in steps of 1 / SCALE_STEPS
+    private static final int SCALE_STEPS = 100;
+    
+    // the life stage is cached and only re-evaluated when the tick count leaves
+    // the range of the current stage
+    private EnumDragonLifeStage lifeStage;
     private EnumDragonLifeStage lifeStagePrev;
+    private int lifeStageStartTicks;
+    private int lifeStageNextTicks;
+    private final List<IDragonLifeStageListener> lifeStageListeners = new ArrayList<>();
+    
+    private int scaleStep = -1;
+    
     private int eggWiggleX;
     private int eggWiggleZ;
     
-    // the ticks since creation is used to control the dragon's life stage.  It is only updated by the server occasionally.
-    // the client keeps a cached copy of it and uses client ticks to interpolate in the gaps.
-    // when the watcher is updated from the server, the client will tick it faster or slower to resynchronise
+    // the age is derived from the world total time, which runs in sync on
+    // both sides, so the birth time only needs to be sent when it's changed.
+    // only the lower 32 bits are stored, the int difference to the current
+    // time stays correct as long as the age fits into an int
     private final DataParameter<Integer> dataParam;
-    private int ticksSinceCreationServer;
-    private final ClientServerSynchronisedTickCount ticksSinceCreationClient;
+    private int birthTime;
 
     public DragonLifeStageHelper(EntityTameableDragon dragon, DataParameter<Integer> dataParam) {
         super(dragon);
         
         this.dataParam = dataParam;
-        dataWatcher.register(dataParam, ticksSinceCreationServer);
         
-        if (dragon.isClient()) {
-            ticksSinceCreationClient = new ClientServerSynchronisedTickCount(TICKS_SINCE_CREATION_UPDATE_INTERVAL);
-            ticksSinceCreationClient.reset(ticksSinceCreationServer);
-        } else {
-            ticksSinceCreationClient = null;
-        }
+        // new dragons start as eggs
+        birthTime = getWorldTime();
+        dataWatcher.register(dataParam, birthTime);
+        
+        refreshLifeStage(0);
+    }
+    
+    private int getWorldTime() {
+        return (int) dragon.worldObj.getTotalWorldTime();
     }
     
     @Override
     public void applyEntityAttributes() {
-        applyScaleModifier(MAX_HEALTH);
-        applyScaleModifier(ATTACK_DAMAGE);
+        float scale = quantizeScale(getScale());
+        applyScaleModifier(MAX_HEALTH, scale);
+        applyScaleModifier(ATTACK_DAMAGE, scale);
     }
     
-    private void applyScaleModifier(IAttribute attribute) {
+    private void applyScaleModifier(IAttribute attribute, float scale) {
         IAttributeInstance instance = dragon.getEntityAttribute(attribute);
         AttributeModifier oldModifier = instance.getModifier(DragonScaleModifier.ID);
         if (oldModifier != null) {
+            // modifiers are immutable, so only replace it if required
+            if (oldModifier.getAmount() == scale) {
+                return;
+            }
             instance.removeModifier(oldModifier);
         }
-        instance.applyModifier(new DragonScaleModifier(getScale()));
+        instance.applyModifier(new DragonScaleModifier(scale));
+    }
+    
+    private static float quantizeScale(float scale) {
+        return Math.round(scale * SCALE_STEPS) / (float) SCALE_STEPS;
     }
     
     /**
@@ -104,37 +132,67 @@ public class DragonLifeStageHelper extends DragonHelper {
      * @return current life stage
      */
     public EnumDragonLifeStage getLifeStage() {
-        int age = getTicksSinceCreation();
-        return EnumDragonLifeStage.fromTickCount(age);
+        return lifeStage;
+    }
+    
+    /**
+     * Registers a listener that is notified on each life stage transition.
+     * 
+     * @param listener life stage listener
+     */
+    public void addLifeStageListener(IDragonLifeStageListener listener) {
+        lifeStageListeners.add(listener);
     }
 
     public int getTicksSinceCreation() {
-        if (dragon.isServer()) {
-            return ticksSinceCreationServer;
-        } else {
-            return ticksSinceCreationClient.getCurrentTickCount();
-        }
+        return EnumDragonLifeStage.clampTickCount(getWorldTime() - birthTime);
     }
     
     public void setTicksSinceCreation(int ticksSinceCreation) {
         if (dragon.isServer()) {
-            ticksSinceCreationServer = ticksSinceCreation;
+            setBirthTime(getWorldTime() - ticksSinceCreation);
         } else {
-            ticksSinceCreationClient.updateFromServer(ticksSinceCreationServer);
+            L.error("setTicksSinceCreation called on Client");
+        }
+        updateLifeStage();
+    }
+    
+    private void setBirthTime(int birthTime) {
+        this.birthTime = birthTime;
+        dataWatcher.set(dataParam, birthTime);
+    }
+    
+    @Override
+    public void notifyDataManagerChange(DataParameter<?> key) {
+        if (dataParam.equals(key)) {
+            birthTime = dataWatcher.get(dataParam);
         }
     }
     
     @Override
     public void writeToNBT(NBTTagCompound nbt) {
         nbt.setInteger(NBT_TICKS_SINCE_CREATION, getTicksSinceCreation());
+        nbt.setLong(NBT_LAST_TICK_TIME, dragon.worldObj.getTotalWorldTime());
     }
 
     @Override
     public void readFromNBT(NBTTagCompound nbt) {
         int ticksRead = nbt.getInteger(NBT_TICKS_SINCE_CREATION);
         ticksRead = EnumDragonLifeStage.clampTickCount(ticksRead);
-        ticksSinceCreationServer = ticksRead;
-        dataWatcher.set(dataParam, ticksSinceCreationServer);
+        
+        // eggs keep incubating while their chunk isn't loaded, so add the
+        // time that has passed since they were saved, up to the hatching time
+        if (nbt.hasKey(NBT_LAST_TICK_TIME) && fromTickCount(ticksRead) == EGG) {
+            long elapsed = dragon.worldObj.getTotalWorldTime() - nbt.getLong(NBT_LAST_TICK_TIME);
+            if (elapsed > 0) {
+                int catchUpTicks = (int) Math.min(elapsed, HATCHLING.startTicks() - ticksRead);
+                dragon.getBreedHelper().catchUpIncubation(catchUpTicks);
+                ticksRead += catchUpTicks;
+            }
+        }
+        
+        setBirthTime(getWorldTime() - ticksRead);
+        refreshLifeStage(ticksRead);
     }
     
     /**
@@ -179,8 +237,7 @@ public class DragonLifeStageHelper extends DragonHelper {
     public final void setLifeStage(EnumDragonLifeStage lifeStage) {
         L.trace("setLifeStage({})", lifeStage);
         if (dragon.isServer()) {
-            ticksSinceCreationServer = lifeStage.startTicks();
-            dataWatcher.set(dataParam, ticksSinceCreationServer);
+            setBirthTime(getWorldTime() - lifeStage.startTicks());
         } else {
             L.error("setLifeStage called on Client");
         }
@@ -200,9 +257,6 @@ public class DragonLifeStageHelper extends DragonHelper {
                 dragon.playSound(SoundEvents.ENTITY_ZOMBIE_BREAK_DOOR_WOOD, 1, 1);
             }
         } else {
-            // update AI
-            dragon.getBrain().updateAITasks();
-            
             // update attribute modifier
             applyEntityAttributes();
 
@@ -212,37 +266,51 @@ public class DragonLifeStageHelper extends DragonHelper {
     }
 
     @Override
-    public void onLivingUpdate() {
-        // if the dragon is not an adult, update its growth ticks
-        if (dragon.isServer()) {
-            if (!isAdult()) {
-                ticksSinceCreationServer++;
-                if (ticksSinceCreationServer % TICKS_SINCE_CREATION_UPDATE_INTERVAL == 0){
-                    dataWatcher.set(dataParam, ticksSinceCreationServer);
-                }
-            }
-        } else {
-            ticksSinceCreationClient.updateFromServer(dataWatcher.get(dataParam));
-            if (!isAdult()) {
-                ticksSinceCreationClient.tick();
-            }
+    public void onLivingUpdate(int ticks) {
+        // adults don't age anymore, so their birth time can be moved forward
+        // once in a while to keep the age from overflowing
+        if (dragon.isServer() && isAdult() && getWorldTime() - birthTime > BIRTH_TIME_REBASE_TICKS) {
+            setBirthTime(getWorldTime() - ADULT.startTicks());
         }
 
         updateLifeStage();
-        updateEgg();
+        updateEgg(ticks);
         updateScale();
     }
     
     private void updateLifeStage() {
+        // only look up the stage again when a stage boundary was crossed
+        int ticks = getTicksSinceCreation();
+        if (ticks < lifeStageStartTicks || ticks >= lifeStageNextTicks) {
+            refreshLifeStage(ticks);
+        }
+        
         // trigger event when a new life stage was reached
-        EnumDragonLifeStage lifeStage = getLifeStage();
         if (lifeStagePrev != lifeStage) {
-            onNewLifeStage(lifeStage, lifeStagePrev);
+            Object event = DragonFlightRecorder.LIFE_STAGE.begin();
+            
+            EnumDragonLifeStage prevLifeStage = lifeStagePrev;
             lifeStagePrev = lifeStage;
+            onNewLifeStage(lifeStage, prevLifeStage);
+            lifeStageListeners.forEach(listener -> listener.onLifeStageChange(lifeStage, prevLifeStage));
+            
+            if (event != null) {
+                DragonFlightRecorder.LIFE_STAGE.commit(event, dragon.getEntityId(),
+                        String.valueOf(prevLifeStage), lifeStage.name());
+            }
         }
     }
     
-    private void updateEgg() {
+    private void refreshLifeStage(int ticks) {
+        lifeStage = EnumDragonLifeStage.fromTickCount(ticks);
+        lifeStageStartTicks = lifeStage.startTicks();
+        
+        // adults stay adults forever
+        EnumDragonLifeStage nextLifeStage = lifeStage.next();
+        lifeStageNextTicks = nextLifeStage != null ? nextLifeStage.startTicks() : Integer.MAX_VALUE;
+    }
+    
+    private void updateEgg(int ticks) {
         if (!isEgg()) {
             return;
         }
@@ -253,9 +321,12 @@ public class DragonLifeStageHelper extends DragonHelper {
         // wait until the egg is nearly hatched
         if (progress > EGG_WIGGLE_THRESHOLD) {
             float wiggleChance = (progress - EGG_WIGGLE_THRESHOLD) / EGG_WIGGLE_BASE_CHANCE * (1 - EGG_WIGGLE_THRESHOLD);
+            
+            // skipped ticks count towards the wiggle timers and chances
+            wiggleChance *= ticks;
 
             if (eggWiggleX > 0) {
-                eggWiggleX--;
+                eggWiggleX = Math.max(0, eggWiggleX - ticks);
             } else if (rand.nextFloat() < wiggleChance) {
                 eggWiggleX = rand.nextBoolean() ? 10 : 20;
                 if (progress > EGG_CRACK_THRESHOLD) {
@@ -264,7 +335,7 @@ public class DragonLifeStageHelper extends DragonHelper {
             }
 
             if (eggWiggleZ > 0) {
-                eggWiggleZ--;
+                eggWiggleZ = Math.max(0, eggWiggleZ - ticks);
             } else if (rand.nextFloat() < wiggleChance) {
                 eggWiggleZ = rand.nextBoolean() ? 10 : 20;
                 if (progress > EGG_CRACK_THRESHOLD) {
@@ -284,7 +355,20 @@ public class DragonLifeStageHelper extends DragonHelper {
     }
 
     private void updateScale() {
-        dragon.setScalePublic(getScale());
+        // eggs and adults never change their size and growing dragons only
+        // very slowly, so skip the bounding box and attribute updates until
+        // the scale has changed noticeably
+        int step = Math.round(getScale() * SCALE_STEPS);
+        if (step == scaleStep) {
+            return;
+        }
+        
+        scaleStep = step;
+        dragon.setScalePublic(step / (float) SCALE_STEPS);
+        
+        if (dragon.isServer()) {
+            applyEntityAttributes();
+        }
     }
     
     @Override
@@ -0,0 +1,90 @@
+/*
+ ** 2016 September 04
+ **
+ ** The author disclaims copyright to this source code.  In place of
+ ** a legal notice, here is a blessing:
+ **    May you do good and not evil.
+ **    May you find forgiveness for yourself and forgive others.
+ **    May you share freely, never taking more than you give.
+ */
+package info.ata4.minecraft.dragon.server.entity.helper;
+
+import info.ata4.minecraft.dragon.DragonMounts;
+import info.ata4.minecraft.dragon.server.entity.EntityTameableDragon;
+import java.util.UUID;
+import net.minecraft.entity.EntityLivingBase;
+
+/**
+ * Keeps track of the owner entity and moves the dragon's home along with it.
+ * 
+ * @author Nico Bergemann <barracuda415 at yahoo.de>
+ */
+public class DragonOwnerTracker {
+    
+    // interval for owner lookups while the owner is offline
+    private static final int OWNER_LOOKUP_INTERVAL = 20;
+    
+    private final EntityTameableDragon dragon;
+    private EntityLivingBase owner;
+    private UUID ownerId;
+    private long nextOwnerLookupTime;
+    
+    public DragonOwnerTracker(EntityTameableDragon dragon) {
+        this.dragon = dragon;
+    }
+    
+    /**
+     * Returns the owner entity if it's in the same world as the dragon.
+     * 
+     * @return owner or null
+     */
+    public EntityLivingBase getOwner() {
+        UUID currentOwnerId = dragon.getOwnerId();
+        if (currentOwnerId == null) {
+            owner = null;
+            ownerId = null;
+            return null;
+        }
+        
+        // look up the new owner right away
+        if (!currentOwnerId.equals(ownerId)) {
+            ownerId = currentOwnerId;
+            owner = null;
+            nextOwnerLookupTime = 0;
+        }
+        
+        // players are re-created on respawns and dimension changes, so the
+        // cached entity is only valid as long as it's alive in this world
+        if (owner != null && !owner.isDead && owner.worldObj == dragon.worldObj) {
+            return owner;
+        }
+        
+        owner = null;
+        
+        long time = dragon.worldObj.getTotalWorldTime();
+        if (time >= nextOwnerLookupTime) {
+            nextOwnerLookupTime = time + OWNER_LOOKUP_INTERVAL;
+            owner = dragon.worldObj.getPlayerEntityByUUID(ownerId);
+        }
+        
+        return owner;
+    }
+    
+    /**
+     * Moves the home position to the owner once the owner has moved far
+     * enough away from it.
+     */
+    public void updateHomePosition() {
+        EntityLivingBase currentOwner = getOwner();
+        if (currentOwner == null) {
+            return;
+        }
+        
+        double distance = DragonMounts.instance.getConfig().getHomeUpdateDistance();
+        if (dragon.hasHome() && currentOwner.getDistanceSqToCenter(dragon.getHomePosition()) < distance * distance) {
+            return;
+        }
+        
+        dragon.setHomePosAndDistance(currentOwner.getPosition(), EntityTameableDragon.HOME_RADIUS);
+    }
+}
@@ -22,6 +22,12 @@ public class DragonParticleHelper extends DragonHelper {
         super(dragon);
     }
     
+    @Override
+    public int getTickRate() {
+        // particles are spawned on demand only
+        return 0;
+    }
+    
     public void spawnBodyParticle(EnumParticleTypes type) {
         double ox, oy, oz;
         float s = dragon.getScale() * 1.2f;
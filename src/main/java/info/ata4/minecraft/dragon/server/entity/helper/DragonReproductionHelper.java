@@ -51,6 +51,12 @@ public class DragonReproductionHelper extends DragonHelper  {
         dataWatcher.register(dataParamBreeder, Optional.absent());
         dataWatcher.register(dataIndexReproCount, 0);
     }
+    
+    @Override
+    public int getTickRate() {
+        // no periodic updates required
+        return 0;
+    }
 
     @Override
     public void writeToNBT(NBTTagCompound nbt) {
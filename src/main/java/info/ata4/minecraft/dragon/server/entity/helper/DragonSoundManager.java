@@ -27,6 +27,12 @@ public class DragonSoundManager extends DragonHelper {
         super(dragon);
     }
     
+    @Override
+    public int getTickRate() {
+        // sounds are triggered by the entity
+        return 0;
+    }
+    
     /**
      * Returns the sound this mob makes while it's alive.
      */
@@ -0,0 +1,66 @@
+/*
+ ** 2016 September 03
+ **
+ ** The author disclaims copyright to this source code.  In place of
+ ** a legal notice, here is a blessing:
+ **    May you do good and not evil.
+ **    May you find forgiveness for yourself and forgive others.
+ **    May you share freely, never taking more than you give.
+ */
+package info.ata4.minecraft.dragon.server.entity.helper;
+
+import info.ata4.minecraft.dragon.server.entity.EntityTameableDragon;
+import net.minecraft.entity.player.EntityPlayer;
+
+/**
+ * Enum for server update levels of detail. Dragons that are far away from all
+ * players update their helpers and AI less often. The intervals are divisors
+ * of 20 so helpers that act once per second still hit their tick.
+ * 
+ * @author Nico Bergemann <barracuda415 at yahoo.de>
+ */
+public enum EnumDragonTickLevel {
+    
+    FULL(1, 32),
+    REDUCED(4, 96),
+    IDLE(20, Double.MAX_VALUE);
+    
+    /**
+     * Returns the level for a dragon based on its distance to the nearest
+     * player, its owner and whether it's ridden or leashed.
+     * 
+     * @param dragon dragon to check
+     * @return tick level
+     */
+    public static EnumDragonTickLevel forDragon(EntityTameableDragon dragon) {
+        // keep full control over dragons that are directly used by players
+        if (dragon.isBeingRidden() || dragon.getLeashed()) {
+            return FULL;
+        }
+        
+        EntityPlayer player = dragon.worldObj.getClosestPlayerToEntity(dragon, REDUCED.range);
+        if (player != null) {
+            double distSq = dragon.getDistanceSqToEntity(player);
+            return distSq < FULL.range * FULL.range ? FULL : REDUCED;
+        }
+        
+        // tamed dragons need to notice when their owner wants them to follow
+        if (dragon.isTamed() && dragon.getOwner() != null) {
+            return REDUCED;
+        }
+        
+        return IDLE;
+    }
+    
+    private final int tickInterval;
+    private final double range;
+    
+    EnumDragonTickLevel(int tickInterval, double range) {
+        this.tickInterval = tickInterval;
+        this.range = range;
+    }
+    
+    public int getTickInterval() {
+        return tickInterval;
+    }
+}
@@ -0,0 +1,28 @@
+/*
+ ** 2016 August 28
+ **
+ ** The author disclaims copyright to this source code.  In place of
+ ** a legal notice, here is a blessing:
+ **    May you do good and not evil.
+ **    May you find forgiveness for yourself and forgive others.
+ **    May you share freely, never taking more than you give.
+ */
+package info.ata4.minecraft.dragon.server.entity.helper;
+
+/**
+ * Listener for life stage transitions of a dragon.
+ * 
+ * @author Nico Bergemann <barracuda415 at yahoo.de>
+ */
+@FunctionalInterface
+public interface IDragonLifeStageListener {
+    
+    /**
+     * Called when the dragon enters a new life stage.
+     * 
+     * @param lifeStage new life stage
+     * @param prevLifeStage previous life stage or null if the stage is set for
+     *                      the first time
+     */
+    public void onLifeStageChange(EnumDragonLifeStage lifeStage, EnumDragonLifeStage prevLifeStage);
+}
@@ -0,0 +1,41 @@
+/*
+ ** 2016 September 01
+ **
+ ** The author disclaims copyright to this source code.  In place of
+ ** a legal notice, here is a blessing:
+ **    May you do good and not evil.
+ **    May you find forgiveness for yourself and forgive others.
+ **    May you share freely, never taking more than you give.
+ */
+
+package info.ata4.minecraft.dragon.server.handler;
+
+import info.ata4.minecraft.dragon.server.entity.helper.DragonHatchery;
+import net.minecraftforge.event.world.WorldEvent;
+import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
+import net.minecraftforge.fml.common.gameevent.TickEvent;
+
+/**
+ * Runs the per-world egg hatcheries at the end of each world tick.
+ * 
+ * @author Nico Bergemann <barracuda415 at yahoo.de>
+ */
+public class DragonHatcheryHandler {
+
+    @SubscribeEvent
+    public void onWorldTick(TickEvent.WorldTickEvent evt) {
+        if (evt.phase != TickEvent.Phase.END || evt.world.isRemote) {
+            return;
+        }
+        
+        DragonHatchery hatchery = DragonHatchery.get(evt.world);
+        if (hatchery != null) {
+            hatchery.tick(evt.world);
+        }
+    }
+    
+    @SubscribeEvent
+    public void onWorldUnload(WorldEvent.Unload evt) {
+        DragonHatchery.remove(evt.getWorld());
+    }
+}
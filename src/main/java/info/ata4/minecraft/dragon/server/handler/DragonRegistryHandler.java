@@ -0,0 +1,36 @@
+/*
+ ** 2016 September 07
+ **
+ ** The author disclaims copyright to this source code.  In place of
+ ** a legal notice, here is a blessing:
+ **    May you do good and not evil.
+ **    May you find forgiveness for yourself and forgive others.
+ **    May you share freely, never taking more than you give.
+ */
+
+package info.ata4.minecraft.dragon.server.handler;
+
+import info.ata4.minecraft.dragon.server.entity.DragonRegistry;
+import net.minecraftforge.event.world.WorldEvent;
+import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
+
+/**
+ * Attaches a dragon registry to each server world before its entities are
+ * loaded.
+ * 
+ * @author Nico Bergemann <barracuda415 at yahoo.de>
+ */
+public class DragonRegistryHandler {
+    
+    @SubscribeEvent
+    public void onWorldLoad(WorldEvent.Load evt) {
+        if (!evt.getWorld().isRemote) {
+            DragonRegistry.forWorld(evt.getWorld());
+        }
+    }
+    
+    @SubscribeEvent
+    public void onWorldUnload(WorldEvent.Unload evt) {
+        DragonRegistry.remove(evt.getWorld());
+    }
+}
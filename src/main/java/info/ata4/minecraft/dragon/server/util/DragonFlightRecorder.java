@@ -0,0 +1,227 @@
+/*
+ ** 2016 September 06
+ **
+ ** The author disclaims copyright to this source code.  In place of
+ ** a legal notice, here is a blessing:
+ **    May you do good and not evil.
+ **    May you find forgiveness for yourself and forgive others.
+ **    May you share freely, never taking more than you give.
+ */
+package info.ata4.minecraft.dragon.server.util;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Java Flight Recorder events for dragons. The JFR API is only available on
+ * newer JVMs, so the event types are created at runtime through reflection
+ * when it's present. Otherwise, and while no recording is running, begin()
+ * returns null and nothing else happens.
+ * 
+ * Call sites should look like this to avoid boxing when not recording:
+ * <pre>
+ * Object event = DragonFlightRecorder.TICK_PHASE.begin();
+ * ...
+ * if (event != null) {
+ *     DragonFlightRecorder.TICK_PHASE.commit(event, entityId, "helpers");
+ * }
+ * </pre>
+ * 
+ * @author Nico Bergemann <barracuda415 at yahoo.de>
+ */
+public final class DragonFlightRecorder {
+    
+    private static final Logger L = LogManager.getLogger();
+    private static final String CATEGORY = "DragonMounts";
+    
+    private static final boolean AVAILABLE;
+    private static volatile boolean recording;
+    
+    private static Method eventBegin;
+    private static Method eventEnd;
+    private static Method eventSet;
+    private static Method eventShouldCommit;
+    private static Method eventCommit;
+    
+    static {
+        AVAILABLE = init();
+    }
+    
+    public static final RecorderEvent TICK_PHASE = new RecorderEvent("TickPhase", "Dragon Tick Phase",
+            int.class, "entityId", String.class, "phase");
+    public static final RecorderEvent FLYING_SWITCH = new RecorderEvent("FlyingSwitch", "Dragon Flying Switch",
+            int.class, "entityId", boolean.class, "flying");
+    public static final RecorderEvent HABITAT_SCAN = new RecorderEvent("HabitatScan", "Dragon Habitat Scan",
+            int.class, "eggs", int.class, "volume", boolean.class, "complete");
+    public static final RecorderEvent PATH = new RecorderEvent("Path", "Dragon Path Computation",
+            int.class, "entityId", int.class, "length", boolean.class, "found");
+    public static final RecorderEvent LIFE_STAGE = new RecorderEvent("LifeStage", "Dragon Life Stage Change",
+            int.class, "entityId", String.class, "from", String.class, "to");
+    
+    private DragonFlightRecorder() {
+        // static utility class
+    }
+    
+    private static boolean init() {
+        try {
+            Class<?> eventClass = Class.forName("jdk.jfr.Event");
+            eventBegin = eventClass.getMethod("begin");
+            eventEnd = eventClass.getMethod("end");
+            eventSet = eventClass.getMethod("set", int.class, Object.class);
+            eventShouldCommit = eventClass.getMethod("shouldCommit");
+            eventCommit = eventClass.getMethod("commit");
+            
+            // track the recording state, so events are only created while
+            // there's at least one running recording
+            Class<?> recorderClass = Class.forName("jdk.jfr.FlightRecorder");
+            Class<?> listenerClass = Class.forName("jdk.jfr.FlightRecorderListener");
+            Object listener = Proxy.newProxyInstance(listenerClass.getClassLoader(),
+                    new Class<?>[] {listenerClass}, (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "recorderInitialized":
+                            case "recordingStateChanged":
+                                updateRecording(recorderClass);
+                                return null;
+                            case "hashCode":
+                                return System.identityHashCode(proxy);
+                            case "equals":
+                                return proxy == args[0];
+                            case "toString":
+                                return "DragonFlightRecorderListener";
+                            default:
+                                return null;
+                        }
+                    });
+            recorderClass.getMethod("addListener", listenerClass).invoke(null, listener);
+            
+            return true;
+        } catch (ClassNotFoundException ex) {
+            L.debug("Flight recorder API not available");
+            return false;
+        } catch (Exception ex) {
+            L.warn("Can't initialize flight recorder events", ex);
+            return false;
+        }
+    }
+    
+    private static void updateRecording(Class<?> recorderClass) throws ReflectiveOperationException {
+        Object recorder = recorderClass.getMethod("getFlightRecorder").invoke(null);
+        List<?> recordings = (List<?>) recorderClass.getMethod("getRecordings").invoke(recorder);
+        
+        boolean running = false;
+        for (Object rec : recordings) {
+            Object state = rec.getClass().getMethod("getState").invoke(rec);
+            if ("RUNNING".equals(state.toString())) {
+                running = true;
+                break;
+            }
+        }
+        
+        recording = running;
+    }
+    
+    /**
+     * Dragon event type with a fixed list of fields.
+     */
+    public static final class RecorderEvent {
+        
+        private final Object factory;
+        private final Method newEvent;
+        
+        private RecorderEvent(String name, String label, Object... fields) {
+            Object eventFactory = null;
+            Method eventFactoryNewEvent = null;
+            
+            if (AVAILABLE) {
+                try {
+                    eventFactory = createFactory(name, label, fields);
+                    eventFactoryNewEvent = eventFactory.getClass().getMethod("newEvent");
+                } catch (Exception ex) {
+                    L.warn("Can't create flight recorder event " + name, ex);
+                    eventFactory = null;
+                }
+            }
+            
+            factory = eventFactory;
+            newEvent = eventFactoryNewEvent;
+        }
+        
+        private static Object createFactory(String name, String label, Object[] fields) throws ReflectiveOperationException {
+            Class<?> annotationElementClass = Class.forName("jdk.jfr.AnnotationElement");
+            Class<?> valueDescriptorClass = Class.forName("jdk.jfr.ValueDescriptor");
+            Class<?> eventFactoryClass = Class.forName("jdk.jfr.EventFactory");
+            
+            Constructor<?> annotationElement = annotationElementClass.getConstructor(Class.class, Object.class);
+            Constructor<?> valueDescriptor = valueDescriptorClass.getConstructor(Class.class, String.class);
+            
+            List<Object> annotations = new ArrayList<>();
+            annotations.add(annotationElement.newInstance(
+                    Class.forName("jdk.jfr.Name"), "dragonmounts." + name));
+            annotations.add(annotationElement.newInstance(
+                    Class.forName("jdk.jfr.Label"), label));
+            annotations.add(annotationElement.newInstance(
+                    Class.forName("jdk.jfr.Category"), new String[] {CATEGORY}));
+            
+            // fields are given as type/name pairs
+            List<Object> values = new ArrayList<>();
+            for (int i = 0; i < fields.length; i += 2) {
+                values.add(valueDescriptor.newInstance(fields[i], fields[i + 1]));
+            }
+            
+            return eventFactoryClass.getMethod("create", List.class, List.class)
+                    .invoke(null, annotations, values);
+        }
+        
+        /**
+         * Creates and starts a new event if a recording is running.
+         * 
+         * @return event or null
+         */
+        public Object begin() {
+            if (!recording || factory == null) {
+                return null;
+            }
+            
+            try {
+                Object event = newEvent.invoke(factory);
+                eventBegin.invoke(event);
+                return event;
+            } catch (ReflectiveOperationException ex) {
+                L.debug("Can't create flight recorder event", ex);
+                return null;
+            }
+        }
+        
+        /**
+         * Ends the event, sets its values in the order of the fields and
+         * commits it.
+         * 
+         * @param event event from begin(), may be null
+         * @param values field values
+         */
+        public void commit(Object event, Object... values) {
+            if (event == null) {
+                return;
+            }
+            
+            try {
+                eventEnd.invoke(event);
+                if (!(Boolean) eventShouldCommit.invoke(event)) {
+                    return;
+                }
+                for (int i = 0; i < values.length; i++) {
+                    eventSet.invoke(event, i, values[i]);
+                }
+                eventCommit.invoke(event);
+            } catch (ReflectiveOperationException ex) {
+                L.debug("Can't commit flight recorder event " + Arrays.toString(values), ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ ** 2016 September 05
+ **
+ ** The author disclaims copyright to this source code.  In place of
+ ** a legal notice, here is a blessing:
+ **    May you do good and not evil.
+ **    May you find forgiveness for yourself and forgive others.
+ **    May you share freely, never taking more than you give.
+ */
+package info.ata4.minecraft.dragon.server.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import net.minecraft.world.World;
+
+/**
+ * Simple server-side profiler for dragon updates. Timings are collected into
+ * log2 histograms per dimension and section while enabled and can be written
+ * to a CSV file. When disabled, begin() only reads a flag.
+ * 
+ * @author Nico Bergemann <barracuda415 at yahoo.de>
+ */
+public final class DragonProfiler {
+    
+    // first bucket covers everything up to 2^MIN_BUCKET_SHIFT ns
+    private static final int MIN_BUCKET_SHIFT = 8;
+    private static final int BUCKETS = 24;
+    
+    private static final Map<Integer, Map<String, Histogram>> DIMENSIONS = new TreeMap<>();
+    private static volatile boolean enabled;
+    private static long startTime;
+    private static long stopTime;
+    
+    private DragonProfiler() {
+        // static utility class
+    }
+    
+    public static boolean isEnabled() {
+        return enabled;
+    }
+    
+    /**
+     * Clears all previous timings and starts profiling.
+     */
+    public static synchronized void start() {
+        DIMENSIONS.clear();
+        startTime = System.nanoTime();
+        enabled = true;
+    }
+    
+    /**
+     * Stops profiling, the collected timings are kept until the next start.
+     */
+    public static synchronized void stop() {
+        if (enabled) {
+            enabled = false;
+            stopTime = System.nanoTime();
+        }
+    }
+    
+    /**
+     * Starts a timing.
+     * 
+     * @return start time for end() or 0 if the profiler is disabled
+     */
+    public static long begin() {
+        return enabled ? System.nanoTime() : 0;
+    }
+    
+    /**
+     * Ends a timing and adds it to the histogram of the section.
+     * 
+     * @param world world of the profiled entity
+     * @param section section name
+     * @param start start time from begin()
+     */
+    public static void end(World world, String section, long start) {
+        if (start == 0 || world.isRemote) {
+            return;
+        }
+        
+        long time = System.nanoTime() - start;
+        
+        synchronized (DragonProfiler.class) {
+            // ignore timings that started before a restart
+            if (!enabled || start < startTime) {
+                return;
+            }
+            
+            DIMENSIONS.computeIfAbsent(world.provider.getDimension(), dim -> new HashMap<>())
+                    .computeIfAbsent(section, name -> new Histogram())
+                    .add(time);
+        }
+    }
+    
+    /**
+     * Writes the collected timings to a CSV file.
+     * 
+     * @param file output file
+     * @throws IOException on write errors
+     */
+    public static synchronized void dump(File file) throws IOException {
+        long duration = (enabled ? System.nanoTime() : stopTime) - startTime;
+        
+        try (PrintWriter out = new PrintWriter(file, StandardCharsets.UTF_8.name())) {
+            out.printf("# duration_ns=%d\n", duration);
+            
+            out.print("dimension,section,count,total_ns,mean_ns,max_ns,p50_ns,p90_ns,p99_ns");
+            for (int i = 0; i < BUCKETS; i++) {
+                out.printf(",le_%d_ns", getBucketLimit(i));
+            }
+            out.println();
+            
+            for (Map.Entry<Integer, Map<String, Histogram>> dim : DIMENSIONS.entrySet()) {
+                for (Map.Entry<String, Histogram> section : new TreeMap<>(dim.getValue()).entrySet()) {
+                    Histogram hist = section.getValue();
+                    out.printf("%d,%s,%d,%d,%d,%d,%d,%d,%d",
+                            dim.getKey(), section.getKey(), hist.count, hist.total,
+                            hist.total / hist.count, hist.max,
+                            hist.percentile(0.5), hist.percentile(0.9), hist.percentile(0.99));
+                    for (long count : hist.buckets) {
+                        out.printf(",%d", count);
+                    }
+                    out.println();
+                }
+            }
+        }
+    }
+    
+    private static long getBucketLimit(int bucket) {
+        return 1L << (bucket + MIN_BUCKET_SHIFT);
+    }
+    
+    private static class Histogram {
+        
+        private final long[] buckets = new long[BUCKETS];
+        private long count;
+        private long total;
+        private long max;
+        
+        private void add(long time) {
+            int bucket = 64 - Long.numberOfLeadingZeros(Math.max(time - 1, 0)) - MIN_BUCKET_SHIFT;
+            buckets[Math.max(0, Math.min(BUCKETS - 1, bucket))]++;
+            count++;
+            total += time;
+            max = Math.max(max, time);
+        }
+        
+        // returns the upper limit of the bucket that contains the percentile
+        private long percentile(double p) {
+            long rank = (long) Math.ceil(count * p);
+            long sum = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                sum += buckets[i];
+                if (sum >= rank) {
+                    return Math.min(getBucketLimit(i), max);
+                }
+            }
+            return max;
+        }
+    }
+}
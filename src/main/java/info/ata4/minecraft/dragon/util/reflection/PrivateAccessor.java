@@ -21,6 +21,7 @@ import net.minecraftforge.fml.relauncher.ReflectionHelper;
 public interface PrivateAccessor {
     
     static final String[] GUIMAINMENU_SPLASHTEXT = new String[] {"splashText", "field_73975_c"};
+    static final String[] BLOCKSTATECONTAINER_PALETTE = new String[] {"palette", "field_186022_c"};
     
     default boolean entityIsJumping(EntityLivingBase entity) {
         return ReflectionHelper.getPrivateValue(EntityLivingBase.class, entity,